@@ -1,18 +1,33 @@
 package com.kinnovatio.examples;
 
+import com.kinnovatio.utils.statestore.LocalStateStore;
+import com.kinnovatio.utils.statestore.MemoryStateStore;
+import com.kinnovatio.utils.statestore.StateStore;
 import io.prometheus.metrics.core.datapoints.Timer;
 import io.prometheus.metrics.core.metrics.Gauge;
-import io.prometheus.metrics.exporter.pushgateway.PushGateway;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.exporter.httpserver.HTTPServer;
+import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
 import io.prometheus.metrics.model.registry.PrometheusRegistry;
 import io.prometheus.metrics.model.snapshots.Unit;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 
 public class Demo {
@@ -30,45 +45,121 @@ public class Demo {
     metrics:
         bar: "the-value"
     "
+
+    The configuration, metrics and job sections are nested "holder" classes. The JVM initializes a holder class on
+    first access, so a section that the current run never uses is never set up: the push gateway settings in service
+    mode and the metrics server settings in batch mode. The metrics and job sections are used by every run, so their
+    setup is part of the time to first work either way.
      */
-    // Metrics configs. From config file / env variables
-    private static final boolean enableMetrics =
-            ConfigProvider.getConfig().getValue("metrics.enable", Boolean.class);
-    private static final String metricsJobName = ConfigProvider.getConfig().getValue("metrics.jobName", String.class);
-    private static final Optional<String> pushGatewayUrl =
-            ConfigProvider.getConfig().getOptionalValue("metrics.pushGateway.url", String.class);
+    private static final class AppConfig {
+        // App configs. From config file / env variables
+        // "batch": run the work once and exit. "service": run the work on a schedule until the container is stopped.
+        static final String appMode = ConfigProvider.getConfig().getValue("app.mode", String.class);
+        static final Duration serviceInterval =
+                ConfigProvider.getConfig().getValue("app.service.interval", Duration.class);
+    }
+
+    private static final class MetricsConfig {
+        // Metrics configs. From config file / env variables
+        static final boolean enableMetrics = ConfigProvider.getConfig().getValue("metrics.enable", Boolean.class);
+    }
+
+    private static final class PushGatewayConfig {
+        // Push gateway configs, batch mode only. From config file / env variables
+        static final String metricsJobName = ConfigProvider.getConfig().getValue("metrics.jobName", String.class);
+        static final Optional<String> pushGatewayUrl =
+                ConfigProvider.getConfig().getOptionalValue("metrics.pushGateway.url", String.class);
+        static final Duration pushInterval =
+                ConfigProvider.getConfig().getValue("metrics.pushGateway.interval", Duration.class);
+        static final Duration pushTimeout =
+                ConfigProvider.getConfig().getValue("metrics.pushGateway.timeout", Duration.class);
+    }
+
+    private static final class MetricsServerConfig {
+        // Metrics server configs, service mode only. From config file / env variables
+        static final int metricsServerPort =
+                ConfigProvider.getConfig().getValue("metrics.server.port", Integer.class);
+    }
 
     /*
     Metrics section. Define the metrics to expose.
      */
-    //JvmMetrics.builder().register(); // initialize the out-of-the-box JVM metrics
-    static final PrometheusRegistry collectorRegistry = new PrometheusRegistry();
-    static final Gauge jobDurationSeconds = Gauge.builder()
-            .name("job.duration_seconds").help("Job duration in seconds")
-            .unit(Unit.SECONDS)
-            .register(collectorRegistry);
+    static final class Metrics {
+        static final PrometheusRegistry collectorRegistry = new PrometheusRegistry();
+        static final Histogram workDurationSeconds = Histogram.builder()
+                .name("job.work.duration_seconds").help("Duration of each work iteration in seconds")
+                .unit(Unit.SECONDS)
+                .register(collectorRegistry);
 
-    static final Gauge errorGauge = Gauge.builder()
-            .name("job.errors").help("Total job errors")
-            .register(collectorRegistry);
+        static final Gauge errorGauge = Gauge.builder()
+                .name("job.errors").help("Total job errors")
+                .register(collectorRegistry);
 
+        // The container cold-start cost, recorded when the first work iteration starts.
+        static final Gauge timeToFirstWorkSeconds = Gauge.builder()
+                .name("job.startup.time_to_first_work_seconds")
+                .help("Time from process start (incl. JVM startup) to the start of the first work iteration")
+                .unit(Unit.SECONDS)
+                .register(collectorRegistry);
+        static final Gauge startupRssBytes = Gauge.builder()
+                .name("job.startup.rss_bytes").help("Resident memory at the start of the first work iteration")
+                .unit(Unit.BYTES)
+                .register(collectorRegistry);
+    }
 
     /*
-    The entry point of the code. It executes the main logic and push job metrics upon completion.
+    Job section. The job runner processes the partitions in parallel and checkpoints the completed partitions.
+     */
+    private static final class Job {
+        // Job configs. From config file / env variables
+        static final int jobPartitions = ConfigProvider.getConfig().getValue("job.partitions", Integer.class);
+        static final int jobConcurrency = ConfigProvider.getConfig().getValue("job.concurrency", Integer.class);
+        // The state file for the partition checkpoints. Without it, the checkpoints are kept in memory only.
+        static final Optional<String> jobStateFile =
+                ConfigProvider.getConfig().getOptionalValue("job.stateFile", String.class);
+
+        static final StateStore stateStore = jobStateFile.<StateStore>map(LocalStateStore::of)
+                .orElseGet(MemoryStateStore::create);
+        static final JobRunner jobRunner = new JobRunner(stateStore, jobConcurrency, Metrics.collectorRegistry);
+    }
+
+    private static final AtomicBoolean startupRecorded = new AtomicBoolean(false);
+
+    /*
+    The entry point of the code. Runs as a batch job or as a long-running service, depending on the app mode.
      */
     public static void main(String[] args) {
+        if ("service".equalsIgnoreCase(AppConfig.appMode)) {
+            runService();
+        } else {
+            runBatch();
+        }
+    }
+
+    /*
+    Batch mode. Executes the main logic once. The job metrics are pushed periodically while the job runs, and
+    upon completion.
+     */
+    private static void runBatch() {
         boolean jobFailed = false;
+        MetricsPusher metricsPusher = startMetricsPusher();
         try {
-            // Execute the main logic
-            run();
+            LOG.info("Starting container in batch mode...");
+            doWork();
 
+            // The job completion metric is only added to the registry after job success,
+            // so that a previous success in the Pushgateway isn't overwritten on failure.
+            Gauge jobCompletionTimeStamp = Gauge.builder()
+                    .name("job_completion_timestamp").help("Job completion time stamp")
+                    .register(Metrics.collectorRegistry);
+            jobCompletionTimeStamp.set(Instant.now().getEpochSecond());
         } catch (Exception e) {
             LOG.error("Unrecoverable error. Will exit. {}", e.toString());
-            errorGauge.inc();
+            Metrics.errorGauge.inc();
             jobFailed = true;
         } finally {
-            if (enableMetrics) {
-                pushMetrics();
+            if (null != metricsPusher) {
+                metricsPusher.stop(); // pushes the final values
             }
             if (jobFailed) {
                 System.exit(1); // container exit code for execution errors, etc.
@@ -77,50 +168,142 @@ public class Demo {
     }
 
     /*
-    The main logic to execute.
+    Service mode. Exposes the metrics (including JVM metrics) on an HTTP /metrics endpoint and executes the main
+    logic on a fixed schedule until the container is stopped. A failed iteration is logged and counted, and the
+    next iteration runs as scheduled.
      */
-    private static void run() throws Exception {
-        LOG.info("Starting container...");
-        Timer jobDurationTimer = jobDurationSeconds.startTimer();
+    private static void runService() {
+        LOG.info("Starting container in service mode. Work interval: {}", AppConfig.serviceInterval);
+        HTTPServer metricsServer = null;
+        if (MetricsConfig.enableMetrics) {
+            JvmMetrics.builder().register(Metrics.collectorRegistry); // initialize the out-of-the-box JVM metrics
+            try {
+                metricsServer = HTTPServer.builder()
+                        .port(MetricsServerConfig.metricsServerPort)
+                        .registry(Metrics.collectorRegistry)
+                        .buildAndStart();
+                LOG.info("Exposing metrics at http://localhost:{}/metrics", metricsServer.getPort());
+            } catch (Exception e) {
+                LOG.error("Unable to start the metrics server on port {}. Will exit. {}",
+                        MetricsServerConfig.metricsServerPort, e.toString());
+                System.exit(1);
+            }
+        }
 
-        LOG.info("Starting some work...");
-        Thread.sleep(3000);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                doWork();
+            } catch (Exception e) {
+                LOG.error("Error during work iteration. Will retry at the next iteration. {}", e.toString());
+                Metrics.errorGauge.inc();
+            }
+        }, 0, AppConfig.serviceInterval.toMillis(), TimeUnit.MILLISECONDS);
 
-        LOG.info("Finished work");
+        // K8s stops the container with SIGTERM. Let the current iteration finish before exiting.
+        CountDownLatch stopped = new CountDownLatch(1);
+        HTTPServer server = metricsServer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            LOG.info("Stopping the service...");
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (null != server) {
+                server.close();
+            }
+            stopped.countDown();
+        }));
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        // automatically records the duration onto the jobDurationSeconds gauge.
-        jobDurationTimer.observeDuration();
+    /*
+    The main logic to execute. One invocation is one work iteration; its duration is recorded in the
+    work duration histogram. The work is split into partitions which are run by the job runner.
+    The job runner (and with it the metrics) is set up before the startup is recorded, so the time to first
+    work includes the setup.
+     */
+    private static void doWork() throws Exception {
+        JobRunner jobRunner = Job.jobRunner;
+        recordStartup();
+        try (Timer timer = Metrics.workDurationSeconds.startTimer()) {
+            LOG.info("Starting some work...");
+            List<String> partitions = IntStream.range(0, Job.jobPartitions)
+                    .mapToObj(i -> "partition-" + i)
+                    .toList();
+            jobRunner.run(partitions, Demo::processPartition);
 
-        // The job completion metric is only added to the registry after job success,
-        // so that a previous success in the Pushgateway isn't overwritten on failure.
-        Gauge jobCompletionTimeStamp = Gauge.builder()
-                .name("job_completion_timestamp").help("Job completion time stamp")
-                .register(collectorRegistry);
-        jobCompletionTimeStamp.set(Instant.now().getEpochSecond());
+            LOG.info("Finished work");
+        }
     }
 
     /*
-    Push the current metrics to the push gateway.
+    Record the container cold-start cost once, when the first work iteration is ready to start: the time since the
+    process started (including JVM startup, with the OS clock tick resolution) and the resident memory at that point.
+    The startup benchmark script parses the log line.
      */
-    private static boolean pushMetrics() {
-        boolean isSuccess = false;
-        if (pushGatewayUrl.isPresent()) {
-            try {
-                LOG.info("Pushing metrics to {}", pushGatewayUrl);
-                PushGateway pg = PushGateway.builder()
-                        .address(pushGatewayUrl.get())
-                        .job(metricsJobName)
-                        .registry(collectorRegistry)
-                        .build();
-                pg.push();
-                isSuccess = true;
-            } catch (Exception e) {
-                LOG.warn("Error when trying to push metrics: {}", e.toString());
-            }
-        } else {
-            LOG.warn("No metrics push gateway configured. Cannot push the metrics.");
+    private static void recordStartup() {
+        if (startupRecorded.getAndSet(true)) {
+            return;
+        }
+        long timeToFirstWorkMillis = ProcessHandle.current().info().startInstant()
+                .map(startTime -> Duration.between(startTime, Instant.now()).toMillis())
+                .orElse(-1L);
+        long rssBytes = readRssBytes();
+        if (timeToFirstWorkMillis >= 0) {
+            Metrics.timeToFirstWorkSeconds.set(timeToFirstWorkMillis / 1000d);
+        }
+        if (rssBytes >= 0) {
+            Metrics.startupRssBytes.set(rssBytes);
         }
+        LOG.info("Startup: time_to_first_work_ms={} rss_bytes={}", timeToFirstWorkMillis, rssBytes);
+    }
+
+    /*
+    Read the resident set size of this process. Linux only, returns -1 if it is not available.
+     */
+    private static long readRssBytes() {
+        try (Stream<String> lines = Files.lines(Path.of("/proc/self/status"))) {
+            return lines.filter(line -> line.startsWith("VmRSS:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")) * 1024) // reported in kB
+                    .findFirst()
+                    .orElse(-1L);
+        } catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    /*
+    The work for a single partition. Replace with your own logic, e.g. read a time range from the source system
+    and write it to the target. Returns the number of processed items.
+     */
+    private static long processPartition(String partitionKey) throws Exception {
+        Thread.sleep(ThreadLocalRandom.current().nextLong(500, 3000));
+        return ThreadLocalRandom.current().nextLong(1_000, 10_000);
+    }
 
-        return isSuccess;
+    /*
+    Start pushing the metrics to the push gateway in the background. Returns null if the metrics are disabled or
+    no push gateway is configured.
+     */
+    private static MetricsPusher startMetricsPusher() {
+        if (!MetricsConfig.enableMetrics) {
+            return null;
+        }
+        if (PushGatewayConfig.pushGatewayUrl.isEmpty()) {
+            LOG.warn("No metrics push gateway configured. Cannot push the metrics.");
+            return null;
+        }
+        MetricsPusher metricsPusher = new MetricsPusher(Metrics.collectorRegistry,
+                PushGatewayConfig.pushGatewayUrl.get(), PushGatewayConfig.metricsJobName,
+                PushGatewayConfig.pushInterval, PushGatewayConfig.pushTimeout);
+        metricsPusher.start();
+        return metricsPusher;
     }
 }
@@ -0,0 +1,149 @@
+package com.kinnovatio.examples;
+
+import com.kinnovatio.utils.statestore.StateStore;
+import io.prometheus.metrics.core.metrics.Counter;
+import io.prometheus.metrics.core.metrics.Gauge;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Runs a job split into partitions, i.e. independent units of work such as a time range or a set of source tables.
+
+The partitions are processed in parallel on virtual threads, with at most {@code concurrency} partitions in
+flight. Each completed partition is checkpointed in the state store, so a job that is restarted (for example after
+a pod eviction) skips the partitions that have already been completed. The checkpoints are cleared when all
+partitions have completed, so the next run of the job starts from scratch.
+
+The checkpoints only survive a restart if the state store does. For a LocalStateStore on K8s, put the state file
+on a persistent volume.
+
+Each partition reports its processed item count and its throughput to the metrics registry.
+ */
+public class JobRunner {
+    private static final Logger LOG = LoggerFactory.getLogger(JobRunner.class);
+
+    private final StateStore stateStore;
+    private final int concurrency;
+
+    private final Counter partitionItems;
+    private final Gauge partitionThroughput;
+    private final Counter partitions;
+
+    /*
+    Creates a job runner and registers its metrics in the registry.
+     */
+    public JobRunner(StateStore stateStore, int concurrency, PrometheusRegistry registry) {
+        this.stateStore = Objects.requireNonNull(stateStore, "The state store cannot be null.");
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+
+        partitionItems = Counter.builder()
+                .name("job.partition.items").help("Total items processed per partition")
+                .labelNames("partition")
+                .register(registry);
+        partitionThroughput = Gauge.builder()
+                .name("job.partition.throughput_items_per_second")
+                .help("Items per second for the last run of a partition")
+                .labelNames("partition")
+                .register(registry);
+        partitions = Counter.builder()
+                .name("job.partitions").help("Total partitions by status: completed, skipped or failed")
+                .labelNames("status")
+                .register(registry);
+    }
+
+    /*
+    Runs the partitions that have not been completed yet, and waits for them to finish.
+
+    A failing partition does not stop the other partitions. It is not checkpointed, so it is retried the next time
+    the job runs. If any partition fails, this method throws after all partitions have finished.
+     */
+    public void run(List<String> partitionKeys, PartitionWorker worker) throws Exception {
+        stateStore.load();
+        List<String> pending = new ArrayList<>();
+        for (String key : partitionKeys) {
+            if (stateStore.getHigh(key).isPresent()) {
+                partitions.labelValues("skipped").inc();
+            } else {
+                pending.add(key);
+            }
+        }
+        LOG.info("Starting job with {} partitions. {} already completed, {} to run with concurrency {}.",
+                partitionKeys.size(), partitionKeys.size() - pending.size(), pending.size(), concurrency);
+
+        // The semaphore is acquired before a partition is submitted, so the virtual threads are only
+        // created for the partitions that can run now.
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String key : pending) {
+                permits.acquire();
+                executor.submit(() -> {
+                    try {
+                        runPartition(key, worker);
+                    } catch (Exception e) {
+                        LOG.error("Partition {} failed. It will be retried on the next run. {}", key, e.toString());
+                        partitions.labelValues("failed").inc();
+                        failures.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } // close() waits for all the partitions to finish
+
+        if (failures.get() > 0) {
+            throw new Exception(String.format("%d of %d partitions failed.", failures.get(), pending.size()));
+        }
+
+        // All partitions are done. Clear the checkpoints so the next run processes all partitions again.
+        synchronized (stateStore) {
+            partitionKeys.forEach(stateStore::deleteState);
+            stateStore.commit();
+        }
+        LOG.info("Job completed. All {} partitions processed.", partitionKeys.size());
+    }
+
+    private void runPartition(String key, PartitionWorker worker) throws Exception {
+        long startNanos = System.nanoTime();
+        long items = worker.process(key);
+        double elapsedSeconds = Math.max(System.nanoTime() - startNanos, 1L) / 1e9;
+
+        partitionItems.labelValues(key).inc(items);
+        partitionThroughput.labelValues(key).set(items / elapsedSeconds);
+        partitions.labelValues("completed").inc();
+
+        // Checkpoint right away, so the partition is skipped if the job restarts. The commit writes the whole
+        // state, so the commits are serialized.
+        synchronized (stateStore) {
+            stateStore.setHigh(key, Instant.now().toEpochMilli());
+            stateStore.commit();
+        }
+        LOG.info("Partition {} completed. {} items in {} seconds ({} items/s).",
+                key, items, String.format("%.2f", elapsedSeconds), String.format("%.0f", items / elapsedSeconds));
+    }
+
+    /*
+    The work to perform for a single partition.
+     */
+    @FunctionalInterface
+    public interface PartitionWorker {
+        /*
+        Processes all the items of a partition.
+        Returns the number of processed items.
+         */
+        long process(String partitionKey) throws Exception;
+    }
+}
@@ -0,0 +1,134 @@
+package com.kinnovatio.examples;
+
+import io.prometheus.metrics.expositionformats.ExpositionFormats;
+import io.prometheus.metrics.expositionformats.PrometheusTextFormatWriter;
+import io.prometheus.metrics.exporter.pushgateway.PushGateway;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+Pushes the metrics to the Pushgateway in the background while a batch job runs, so a long-running job can be
+monitored before it ends and a killed job leaves its latest metrics behind.
+
+The pushes run on a single daemon thread, so the job's work threads never wait for the Pushgateway, not even when it
+is slow or unreachable. The Pushgateway client is reused across pushes, and a push is skipped if no metric value
+has changed since the previous push. The connect and read timeouts bound how long a single push can take.
+
+The metrics are pushed with "push add" semantics, i.e. they replace the metrics with the same name in the job's
+group and leave the other metrics in place. For example, the job completion timestamp of a previous run is kept until
+the current run completes.
+ */
+public class MetricsPusher {
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsPusher.class);
+
+    private final PrometheusRegistry registry;
+    private final PushGateway pushGateway;
+    private final String address;
+    private final Duration interval;
+    private final Duration timeout;
+    private final PrometheusTextFormatWriter textWriter = ExpositionFormats.init().getPrometheusTextFormatWriter();
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final Object pushLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+    private byte[] lastPushed = new byte[0]; // guarded by pushLock
+
+    /*
+    Creates a pusher. The pushes start when start() is called.
+     */
+    public MetricsPusher(PrometheusRegistry registry, String address, String job, Duration interval, Duration timeout) {
+        this.registry = Objects.requireNonNull(registry, "The registry cannot be null.");
+        this.address = Objects.requireNonNull(address, "The address cannot be null.");
+        this.interval = Objects.requireNonNull(interval, "The interval cannot be null.");
+        this.timeout = Objects.requireNonNull(timeout, "The timeout cannot be null.");
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("The push interval must be positive.");
+        }
+        pushGateway = PushGateway.builder()
+                .address(address)
+                .job(job)
+                .registry(registry)
+                .connectionFactory(url -> {
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    connection.setConnectTimeout((int) timeout.toMillis());
+                    connection.setReadTimeout((int) timeout.toMillis());
+                    return connection;
+                })
+                .build();
+    }
+
+    /*
+    Starts the periodic pushes, and registers a shutdown hook which pushes the final values when the JVM exits
+    (for example when K8s stops the pod with SIGTERM).
+     */
+    public synchronized void start() {
+        if (null != scheduler) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("metrics-pusher").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::pushIfChanged,
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(
+                Thread.ofPlatform().name("metrics-pusher-shutdown").unstarted(this::stop));
+        LOG.info("Pushing metrics every {} to {}", interval, address);
+    }
+
+    /*
+    Stops the periodic pushes and pushes the final values. Only the first call has an effect, so it is safe to call
+    both from the job and from the shutdown hook.
+     */
+    public void stop() {
+        if (stopped.getAndSet(true)) {
+            return;
+        }
+        synchronized (this) {
+            if (null != scheduler) {
+                scheduler.shutdown();
+                try {
+                    // An ongoing push is bounded by the connect and read timeouts.
+                    if (!scheduler.awaitTermination(timeout.toMillis() * 2, TimeUnit.MILLISECONDS)) {
+                        scheduler.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        pushIfChanged();
+    }
+
+    /*
+    Pushes the metrics if any value has changed since the last push. A failed push is logged and retried at the
+    next interval.
+     */
+    private void pushIfChanged() {
+        synchronized (pushLock) {
+            try {
+                ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+                textWriter.write(snapshot, registry.scrape());
+                byte[] current = snapshot.toByteArray();
+                if (Arrays.equals(current, lastPushed)) {
+                    LOG.debug("No metric values have changed. Skipping the push.");
+                    return;
+                }
+                pushGateway.pushAdd();
+                lastPushed = current;
+                LOG.debug("Pushed metrics to {}", address);
+            } catch (Exception e) {
+                LOG.warn("Error when trying to push metrics: {}", e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+#
+# Measures the container cold-start cost of one or more images: the time to first work and the resident memory
+# (RSS) at that point, as reported by the app in its "Startup:" log line, plus the total run time of the container.
+# Each image is run as a short batch job (no partitions, no metrics) a number of times, and the median, min and max
+# are reported. Compare a release with the previous one, or the default build with the startup-optimized build:
+#
+#   mvn package jib:dockerBuild -Dimage=k8-template:default
+#   mvn -P startup-optimized package jib:dockerBuild -Dimage=k8-template:cds
+#   ./startup-benchmark.sh -n 10 k8-template:default k8-template:cds
+#
+# Use the same CPU and memory limits as the K8s deployment (--cpus, --memory) so the numbers are representative.
+set -euo pipefail
+
+runs=10
+docker_args=(--cpus 1 --memory 256m)
+
+usage() {
+  echo "Usage: $0 [-n runs] [-d 'docker run args'] image [image...]" >&2
+  exit 1
+}
+
+while getopts "n:d:" opt; do
+  case "${opt}" in
+    n) runs="${OPTARG}" ;;
+    d) read -r -a docker_args <<< "${OPTARG}" ;;
+    *) usage ;;
+  esac
+done
+shift $((OPTIND - 1))
+[[ $# -ge 1 ]] || usage
+
+# Prints "median min max" of the numbers on stdin.
+stats() {
+  sort -n | awk '{ v[NR] = $1 } END { printf "%s %s %s", v[int((NR + 1) / 2)], v[1], v[NR] }'
+}
+
+printf "%-40s %28s %28s %28s\n" "image" "time to first work ms" "RSS at first work MiB" "total run time ms"
+printf "%-40s %28s %28s %28s\n" "" "(median min max)" "(median min max)" "(median min max)"
+for image in "$@"; do
+  ttfw=() rss=() total=()
+  docker run --rm "${docker_args[@]}" --env job_partitions=0 --env metrics_enable=false "${image}" > /dev/null 2>&1 \
+    || { echo "Warm-up run of ${image} failed" >&2; exit 1; }
+  for ((i = 0; i < runs; i++)); do
+    start=$(date +%s%N)
+    log=$(docker run --rm "${docker_args[@]}" --env job_partitions=0 --env metrics_enable=false "${image}" 2>&1)
+    end=$(date +%s%N)
+    line=$(grep -o "time_to_first_work_ms=[0-9-]* rss_bytes=[0-9-]*" <<< "${log}") \
+      || { echo "No startup log line from ${image}:" >&2; echo "${log}" >&2; exit 1; }
+    ttfw+=("$(sed -E 's/.*time_to_first_work_ms=([0-9-]+).*/\1/' <<< "${line}")")
+    rss+=("$(sed -E 's/.*rss_bytes=([0-9-]+).*/\1/' <<< "${line}" | awk '{ printf "%.1f", $1 / 1048576 }')")
+    total+=("$(( (end - start) / 1000000 ))")
+  done
+  printf "%-40s %28s %28s %28s\n" "${image}" \
+    "$(printf "%s\n" "${ttfw[@]}" | stats)" \
+    "$(printf "%s\n" "${rss[@]}" | stats)" \
+    "$(printf "%s\n" "${total[@]}" | stats)"
+done
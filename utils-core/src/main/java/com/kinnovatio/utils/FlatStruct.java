@@ -0,0 +1,231 @@
+package com.kinnovatio.utils;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A flattened, indexed view of a {@code Struct} for repeated random lookups by path.
+ *
+ * {@link ParseStruct} traverses the {@code Struct} from the root on every call. When many paths are evaluated
+ * against the same {@code Struct} (for example by a rule engine), {@code FlatStruct} flattens the tree once into
+ * a dotted path to value-range index, after which each lookup is a single hash probe.
+ *
+ * The flattening follows the {@code ParseStruct} path semantics: every node is indexed under its dotted path
+ * ("parent.child.grandChild"), lists are transparent so that a path through a list fans out over its elements,
+ * and null values are skipped. A path can therefore map to multiple values.
+ *
+ * The index is stored in compact arrays (a key array, a value array and an open-addressing hash table) rather than
+ * nested maps. It is built lazily on first access and is safe to share across threads.
+ * <pre>{@code
+ * FlatStruct flat = FlatStruct.index(struct);
+ * for (Rule rule : rules) {
+ *     rule.evaluate(flat.getStrings(rule.getPath()));
+ * }
+ * }</pre>
+ */
+public final class FlatStruct {
+    private final Struct struct;
+    private volatile Index index;
+
+    private FlatStruct(Struct struct) {
+        this.struct = struct;
+    }
+
+    /**
+     * Creates a flattened view of a {@code Struct}. The index is built on first access.
+     *
+     * @param struct The Struct to index.
+     * @return The flattened view.
+     */
+    public static FlatStruct index(Struct struct) {
+        Objects.requireNonNull(struct, "Struct cannot be null");
+        return new FlatStruct(struct);
+    }
+
+    /**
+     * The {@code Struct} backing this view.
+     * @return the struct.
+     */
+    public Struct getStruct() {
+        return struct;
+    }
+
+    /**
+     * Returns the values at a path.
+     *
+     * @param path The path of node to look up, separated by period ("."). Ex: "parent.child.grandChild"
+     * @return A read-only list of the values at the path. If no match, then an empty list is returned.
+     */
+    public List<Value> get(String path) {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Index index = getIndex();
+        int key = index.find(path);
+        if (key < 0) {
+            return List.of();
+        }
+        return Collections.unmodifiableList(
+                Arrays.asList(index.values).subList(index.offsets[key], index.offsets[key + 1]));
+    }
+
+    /**
+     * Returns the first value at a path.
+     *
+     * @param path The path of node to look up, separated by period ("."). Ex: "parent.child.grandChild"
+     * @return The first value at the path, or an empty {@code Optional} if there is no match.
+     */
+    public Optional<Value> getFirst(String path) {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Index index = getIndex();
+        int key = index.find(path);
+        return key < 0 ? Optional.empty() : Optional.of(index.values[index.offsets[key]]);
+    }
+
+    /**
+     * Returns the values at a path, parsed to {@code String}. This corresponds to
+     * {@link ParseStruct#parseStringList(Struct, List)}, except for a list nested directly in a list at the end of
+     * the path: {@code ParseStruct} returns the string form of the inner list, while this method returns its
+     * elements.
+     *
+     * @param path The path of node to look up, separated by period ("."). Ex: "parent.child.grandChild"
+     * @return The string representation of the values at the path. If no match, then an empty list is returned.
+     */
+    public List<String> getStrings(String path) {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Index index = getIndex();
+        int key = index.find(path);
+        if (key < 0) {
+            return List.of();
+        }
+        List<String> results = new ArrayList<>(index.offsets[key + 1] - index.offsets[key]);
+        for (int i = index.offsets[key]; i < index.offsets[key + 1]; i++) {
+            results.add(ParseValue.parseString(index.values[i]));
+        }
+        return results;
+    }
+
+    /**
+     * Checks if there is at least one (non-null) value at a path.
+     *
+     * @param path The path of node to look up, separated by period ("."). Ex: "parent.child.grandChild"
+     * @return {@code true} if the path has a value.
+     */
+    public boolean contains(String path) {
+        Objects.requireNonNull(path, "Path cannot be null");
+        return getIndex().find(path) >= 0;
+    }
+
+    /**
+     * Returns all indexed paths, in traversal order.
+     * @return An immutable list of all paths.
+     */
+    public List<String> getPaths() {
+        return List.of(getIndex().keys);
+    }
+
+    /*
+    Builds the index on first access. Double-checked locking on the volatile field ensures that the index is built
+    once and safely published to all threads.
+     */
+    private Index getIndex() {
+        Index result = index;
+        if (null == result) {
+            synchronized (this) {
+                result = index;
+                if (null == result) {
+                    result = Index.build(struct);
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FlatStruct{" + struct + "}";
+    }
+
+    /*
+    The immutable index. The values of key i are stored in values[offsets[i], offsets[i + 1]). The hash table
+    holds key index + 1, with 0 marking an empty slot.
+     */
+    private static final class Index {
+        private final String[] keys;
+        private final int[] offsets;
+        private final Value[] values;
+        private final int[] table;
+        private final int mask;
+
+        private Index(String[] keys, int[] offsets, Value[] values) {
+            this.keys = keys;
+            this.offsets = offsets;
+            this.values = values;
+            int capacity = Integer.highestOneBit(Math.max(2, keys.length) * 2 - 1) << 1;
+            table = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++) {
+                int slot = spread(keys[i].hashCode()) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+
+        static Index build(Struct struct) {
+            Map<String, List<Value>> entries = new LinkedHashMap<>();
+            for (Map.Entry<String, Value> field : struct.getFieldsMap().entrySet()) {
+                flatten(field.getKey(), field.getValue(), entries);
+            }
+
+            String[] keys = entries.keySet().toArray(new String[0]);
+            int[] offsets = new int[keys.length + 1];
+            List<Value> values = new ArrayList<>();
+            for (int i = 0; i < keys.length; i++) {
+                values.addAll(entries.get(keys[i]));
+                offsets[i + 1] = values.size();
+            }
+            return new Index(keys, offsets, values.toArray(new Value[0]));
+        }
+
+        private static void flatten(String key, Value value, Map<String, List<Value>> entries) {
+            if (value.hasListValue()) {
+                for (Value element : value.getListValue().getValuesList()) {
+                    flatten(key, element, entries);
+                }
+            } else if (!value.hasNullValue()) {
+                entries.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
+                if (value.hasStructValue()) {
+                    for (Map.Entry<String, Value> field : value.getStructValue().getFieldsMap().entrySet()) {
+                        flatten(key + "." + field.getKey(), field.getValue(), entries);
+                    }
+                }
+            }
+        }
+
+        int find(String key) {
+            int slot = spread(key.hashCode()) & mask;
+            int entry;
+            while ((entry = table[slot]) != 0) {
+                if (keys[entry - 1].equals(key)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
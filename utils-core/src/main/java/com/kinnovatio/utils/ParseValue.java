@@ -123,4 +123,238 @@ public class ParseValue {
         }
         return returnBoolean;
     }
+
+    /*
+    Exact powers of ten representable as doubles. Used by the fast path of tryParseDouble().
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Tries to parse a {@code Value} to a {@code long} without throwing on invalid input. This is the non-throwing
+     * counterpart of {@link #parseLong(Value)}, intended for hot paths and inputs where invalid values are common.
+     *
+     * Numeric {@code Value}s are rounded to the closest long. String {@code Value}s are parsed directly from the
+     * string contents as a decimal integer with an optional sign; leading and trailing whitespace is ignored.
+     *
+     * The outcome is written to {@code result}, which can be reused across calls.
+     * @param rawValue the value to parse
+     * @param result the holder of the parsed value and status
+     * @return {@code true} if the parsing was successful.
+     */
+    public static boolean tryParseLong(Value rawValue, ParsedValue result) {
+        Objects.requireNonNull(rawValue, "rawValue cannot be null");
+        Objects.requireNonNull(result, "result cannot be null");
+        if (rawValue.hasNumberValue()) {
+            return result.setLong(Math.round(rawValue.getNumberValue()));
+        } else if (rawValue.hasStringValue()) {
+            return parseLong(rawValue.getStringValue(), result);
+        } else {
+            return result.fail(ParsedValue.Status.INVALID_TYPE);
+        }
+    }
+
+    /**
+     * Tries to parse a {@code Value} to a {@code double} without throwing on invalid input. This is the non-throwing
+     * counterpart of {@link #parseDouble(Value)}, intended for hot paths and inputs where invalid values are common.
+     *
+     * String {@code Value}s are parsed directly from the string contents as a decimal number with an optional
+     * fraction and exponent, or as {@code NaN}/{@code Infinity}. Leading and trailing whitespace is ignored.
+     * Hexadecimal notation and type suffixes (i.e. "1.0d") are not supported.
+     *
+     * The outcome is written to {@code result}, which can be reused across calls.
+     * @param rawValue the value to parse
+     * @param result the holder of the parsed value and status
+     * @return {@code true} if the parsing was successful.
+     */
+    public static boolean tryParseDouble(Value rawValue, ParsedValue result) {
+        Objects.requireNonNull(rawValue, "rawValue cannot be null");
+        Objects.requireNonNull(result, "result cannot be null");
+        if (rawValue.hasNumberValue()) {
+            return result.setDouble(rawValue.getNumberValue());
+        } else if (rawValue.hasStringValue()) {
+            return parseDouble(rawValue.getStringValue(), result);
+        } else {
+            return result.fail(ParsedValue.Status.INVALID_TYPE);
+        }
+    }
+
+    /**
+     * Tries to parse a {@code Value} to a {@code boolean} without throwing on invalid input. This is the
+     * non-throwing counterpart of {@link #parseBoolean(Value)} and follows the same parsing rules.
+     *
+     * The outcome is written to {@code result}, which can be reused across calls.
+     * @param rawValue the value to parse
+     * @param result the holder of the parsed value and status
+     * @return {@code true} if the parsing was successful.
+     */
+    public static boolean tryParseBoolean(Value rawValue, ParsedValue result) {
+        Objects.requireNonNull(rawValue, "rawValue cannot be null");
+        Objects.requireNonNull(result, "result cannot be null");
+        if (rawValue.hasBoolValue()) {
+            return result.setBoolean(rawValue.getBoolValue());
+        } else if (rawValue.hasNumberValue()) {
+            return result.setBoolean(Double.compare(1d, rawValue.getNumberValue()) == 0);
+        } else if (rawValue.hasStringValue()) {
+            return result.setBoolean(rawValue.getStringValue().equalsIgnoreCase("true"));
+        } else {
+            return result.fail(ParsedValue.Status.INVALID_TYPE);
+        }
+    }
+
+    /*
+    Parses a decimal integer. Accumulates the value as a negative number (like Long.parseLong()) so that
+    Long.MIN_VALUE can be represented.
+     */
+    private static boolean parseLong(String input, ParsedValue result) {
+        int end = input.length();
+        while (end > 0 && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int pos = 0;
+        while (pos < end && input.charAt(pos) <= ' ') {
+            pos++;
+        }
+        if (pos == end) {
+            return result.fail(ParsedValue.Status.INVALID_FORMAT);
+        }
+
+        boolean negative = false;
+        char first = input.charAt(pos);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+            if (pos == end) {
+                return result.fail(ParsedValue.Status.INVALID_FORMAT);
+            }
+        }
+
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        boolean overflow = false;
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = input.charAt(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return result.fail(ParsedValue.Status.INVALID_FORMAT);
+            }
+            if (!overflow) {
+                if (value < multiplyMin || value * 10 < limit + digit) {
+                    // Keep scanning so that malformed input is reported as such.
+                    overflow = true;
+                } else {
+                    value = value * 10 - digit;
+                }
+            }
+        }
+        if (overflow) {
+            return result.fail(ParsedValue.Status.OUT_OF_RANGE);
+        }
+
+        return result.setLong(negative ? value : -value);
+    }
+
+    /*
+    Parses a decimal floating point number. Numbers with at most 15 significant digits and a decimal exponent
+    within [-22, 22] are computed exactly from the digits. Other valid numbers are delegated to
+    Double.parseDouble(), which will not throw since the syntax has already been validated.
+     */
+    private static boolean parseDouble(String input, ParsedValue result) {
+        int end = input.length();
+        while (end > 0 && input.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int pos = 0;
+        while (pos < end && input.charAt(pos) <= ' ') {
+            pos++;
+        }
+        if (pos == end) {
+            return result.fail(ParsedValue.Status.INVALID_FORMAT);
+        }
+
+        boolean negative = false;
+        char first = input.charAt(pos);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            pos++;
+        }
+        if (input.startsWith("NaN", pos) && pos + 3 == end) {
+            return result.setDouble(Double.NaN);
+        }
+        if (input.startsWith("Infinity", pos) && pos + 8 == end) {
+            return result.setDouble(negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digitCount = 0;
+        int scale = 0;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            char c = input.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                digitCount++;
+                if (mantissa != 0 || c != '0') {
+                    significantDigits++;
+                    if (significantDigits <= 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (seenPoint) {
+                            scale--;
+                        }
+                    } else if (!seenPoint) {
+                        scale++;
+                    }
+                } else if (seenPoint) {
+                    scale--;
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digitCount == 0) {
+            return result.fail(ParsedValue.Status.INVALID_FORMAT);
+        }
+
+        if (pos < end) {
+            char c = input.charAt(pos);
+            if (c != 'e' && c != 'E') {
+                return result.fail(ParsedValue.Status.INVALID_FORMAT);
+            }
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (input.charAt(pos) == '-' || input.charAt(pos) == '+')) {
+                negativeExponent = input.charAt(pos) == '-';
+                pos++;
+            }
+            if (pos == end) {
+                return result.fail(ParsedValue.Status.INVALID_FORMAT);
+            }
+            int exponent = 0;
+            for (; pos < end; pos++) {
+                int digit = input.charAt(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    return result.fail(ParsedValue.Status.INVALID_FORMAT);
+                }
+                if (exponent < 100_000) {
+                    exponent = exponent * 10 + digit;
+                }
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0d;
+        } else if (significantDigits <= 15 && scale >= -22 && scale <= 22) {
+            value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        } else {
+            value = Math.abs(Double.parseDouble(input));
+        }
+
+        return result.setDouble(negative ? -value : value);
+    }
 }
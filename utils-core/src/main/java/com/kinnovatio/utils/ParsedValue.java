@@ -0,0 +1,112 @@
+package com.kinnovatio.utils;
+
+/**
+ * A reusable, mutable holder for the result of the non-throwing parse methods in {@link ParseValue}.
+ *
+ * A single instance can be reused across many parse calls (for example, one instance per thread when parsing a
+ * large batch) so that parsing does not allocate. Each call overwrites the previous result.
+ * <pre>{@code
+ * ParsedValue result = new ParsedValue();
+ * for (Value value : values) {
+ *     if (ParseValue.tryParseDouble(value, result)) {
+ *         sum += result.getDouble();
+ *     }
+ * }
+ * }</pre>
+ *
+ * Instances are not thread-safe.
+ */
+public final class ParsedValue {
+
+    /**
+     * The outcome of a parse call.
+     */
+    public enum Status {
+        /** The value was parsed successfully. */
+        OK,
+        /** The {@code Value} kind (for example a list or a struct) cannot be parsed to the target type. */
+        INVALID_TYPE,
+        /** The {@code Value} is a string which is not a valid representation of the target type. */
+        INVALID_FORMAT,
+        /** The {@code Value} is a valid number, but outside the range of the target type. */
+        OUT_OF_RANGE
+    }
+
+    private Status status = Status.INVALID_TYPE;
+    private long longValue;
+    private double doubleValue;
+    private boolean booleanValue;
+
+    /**
+     * The status of the last parse call.
+     * @return the status.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks if the last parse call was successful.
+     * @return {@code true} if the status is {@link Status#OK}.
+     */
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * The result of the last successful {@link ParseValue#tryParseLong(com.google.protobuf.Value, ParsedValue)} call.
+     * @return the long value.
+     */
+    public long getLong() {
+        return longValue;
+    }
+
+    /**
+     * The result of the last successful {@link ParseValue#tryParseDouble(com.google.protobuf.Value, ParsedValue)}
+     * call.
+     * @return the double value.
+     */
+    public double getDouble() {
+        return doubleValue;
+    }
+
+    /**
+     * The result of the last successful {@link ParseValue#tryParseBoolean(com.google.protobuf.Value, ParsedValue)}
+     * call.
+     * @return the boolean value.
+     */
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+
+    boolean setLong(long value) {
+        longValue = value;
+        status = Status.OK;
+        return true;
+    }
+
+    boolean setDouble(double value) {
+        doubleValue = value;
+        status = Status.OK;
+        return true;
+    }
+
+    boolean setBoolean(boolean value) {
+        booleanValue = value;
+        status = Status.OK;
+        return true;
+    }
+
+    boolean fail(Status failure) {
+        status = failure;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ParsedValue{status=" + status
+                + ", long=" + longValue
+                + ", double=" + doubleValue
+                + ", boolean=" + booleanValue + "}";
+    }
+}
@@ -0,0 +1,38 @@
+package com.kinnovatio.utils.columnar;
+
+/**
+ * A column of {@code boolean} values. Null rows hold the default value ({@code false}) in the value array.
+ */
+public final class BooleanColumn extends Column {
+    private final boolean[] values;
+
+    BooleanColumn(String name, boolean[] values, long[] nullBitmap, int invalidCount) {
+        super(name, values.length, nullBitmap, invalidCount);
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of a row. Check {@link #isNull(int)} first if the column may contain nulls.
+     * @param row the row index.
+     * @return the row value.
+     */
+    public boolean getBoolean(int row) {
+        return values[row];
+    }
+
+    /**
+     * The backing value array of the column.
+     * @return the values.
+     */
+    public boolean[] getValues() {
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColumnType getType() {
+        return ColumnType.BOOLEAN;
+    }
+}
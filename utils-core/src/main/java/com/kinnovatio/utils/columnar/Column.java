@@ -0,0 +1,71 @@
+package com.kinnovatio.utils.columnar;
+
+/**
+ * Parent class for the typed columns produced by {@link StructColumnarConverter}.
+ *
+ * Null values are tracked in a bitmap where bit {@code i} is set if row {@code i} is null. A row is null if the
+ * source node is missing, is a {@code NULL_VALUE} or cannot be parsed to the column type. The backing arrays are
+ * exposed without copying, so treat them as read-only.
+ */
+public abstract sealed class Column permits LongColumn, DoubleColumn, BooleanColumn, StringColumn {
+    private final String name;
+    private final int size;
+    private final long[] nullBitmap;
+    private final int invalidCount;
+
+    Column(String name, int size, long[] nullBitmap, int invalidCount) {
+        this.name = name;
+        this.size = size;
+        this.nullBitmap = nullBitmap;
+        this.invalidCount = invalidCount;
+    }
+
+    /**
+     * The name of the column.
+     * @return the column name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of rows in the column.
+     * @return the row count.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a row is null.
+     * @param row the row index.
+     * @return {@code true} if the row is null.
+     */
+    public boolean isNull(int row) {
+        return (nullBitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * The null bitmap of the column. Bit {@code i} (i.e. {@code bitmap[i >>> 6] & (1L << i)}) is set if row
+     * {@code i} is null.
+     * @return the null bitmap.
+     */
+    public long[] getNullBitmap() {
+        return nullBitmap;
+    }
+
+    /**
+     * The number of rows where the source node was present, but could not be parsed to the column type. These
+     * rows are also marked as null.
+     * @return the number of invalid rows.
+     */
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * The type of the column.
+     * @return the column type.
+     */
+    public abstract ColumnType getType();
+}
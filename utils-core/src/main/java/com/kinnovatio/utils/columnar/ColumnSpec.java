@@ -0,0 +1,64 @@
+package com.kinnovatio.utils.columnar;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * Describes a single output column of a columnar conversion: the column name, the path to the source node in
+ * the {@code Struct} and the target type.
+ */
+@AutoValue
+public abstract class ColumnSpec {
+
+    private static Builder builder() {
+        return new AutoValue_ColumnSpec.Builder();
+    }
+
+    /**
+     * Specifies a column.
+     *
+     * @param name The name of the output column.
+     * @param path The path of the node to parse, separated by period ("."). Ex: "parent.child.grandChild"
+     * @param type The target type of the column.
+     * @return the column specification.
+     */
+    public static ColumnSpec of(String name, String path, ColumnType type) {
+        Preconditions.checkArgument(null != name && !name.isBlank(), "Name cannot be null or empty");
+        Preconditions.checkArgument(null != path && !path.isBlank(), "Path cannot be null or empty");
+        Preconditions.checkArgument(null != type, "Type cannot be null");
+        return ColumnSpec.builder()
+                .setName(name)
+                .setPath(List.of(path.split("\\.")))
+                .setType(type)
+                .build();
+    }
+
+    /**
+     * The name of the output column.
+     * @return the column name.
+     */
+    public abstract String getName();
+
+    /**
+     * The path of the source node. Each item in the list is a path component.
+     * @return the path components.
+     */
+    public abstract List<String> getPath();
+
+    /**
+     * The target type of the column.
+     * @return the column type.
+     */
+    public abstract ColumnType getType();
+
+    @AutoValue.Builder
+    abstract static class Builder {
+        abstract Builder setName(String value);
+        abstract Builder setPath(List<String> value);
+        abstract Builder setType(ColumnType value);
+
+        abstract ColumnSpec build();
+    }
+}
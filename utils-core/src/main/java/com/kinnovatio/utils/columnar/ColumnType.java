@@ -0,0 +1,17 @@
+package com.kinnovatio.utils.columnar;
+
+/**
+ * The target types supported by the columnar conversion of {@code Struct} batches.
+ *
+ * @see StructColumnarConverter
+ */
+public enum ColumnType {
+    /** Parsed via the {@code ParseValue.parseLong} semantics into a {@code long[]}. */
+    LONG,
+    /** Parsed via the {@code ParseValue.parseDouble} semantics into a {@code double[]}. */
+    DOUBLE,
+    /** Parsed via the {@code ParseValue.parseBoolean} semantics into a {@code boolean[]}. */
+    BOOLEAN,
+    /** Parsed via the {@code ParseValue.parseString} semantics into a dictionary-encoded column. */
+    STRING
+}
@@ -0,0 +1,100 @@
+package com.kinnovatio.utils.columnar;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The columnar representation of a batch of {@code Struct} records. Holds one {@link Column} per
+ * {@link ColumnSpec}, in schema order.
+ */
+public final class ColumnarBatch {
+    private final int rowCount;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    ColumnarBatch(int rowCount, List<Column> columns) {
+        this.rowCount = rowCount;
+        for (Column column : columns) {
+            this.columns.put(column.getName(), column);
+        }
+    }
+
+    /**
+     * The number of rows in the batch.
+     * @return the row count.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * The columns of the batch, in schema order.
+     * @return the columns.
+     */
+    public List<Column> getColumns() {
+        return List.copyOf(columns.values());
+    }
+
+    /**
+     * Returns a column by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws IllegalArgumentException if the batch has no column with the given name.
+     */
+    public Column getColumn(String name) {
+        Column column = columns.get(Objects.requireNonNull(name, "Name cannot be null"));
+        if (null == column) {
+            throw new IllegalArgumentException("No column named " + name);
+        }
+        return column;
+    }
+
+    /**
+     * Returns a {@code long} column by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws IllegalArgumentException if the batch has no {@code long} column with the given name.
+     */
+    public LongColumn getLongColumn(String name) {
+        return getTypedColumn(name, LongColumn.class);
+    }
+
+    /**
+     * Returns a {@code double} column by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws IllegalArgumentException if the batch has no {@code double} column with the given name.
+     */
+    public DoubleColumn getDoubleColumn(String name) {
+        return getTypedColumn(name, DoubleColumn.class);
+    }
+
+    /**
+     * Returns a {@code boolean} column by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws IllegalArgumentException if the batch has no {@code boolean} column with the given name.
+     */
+    public BooleanColumn getBooleanColumn(String name) {
+        return getTypedColumn(name, BooleanColumn.class);
+    }
+
+    /**
+     * Returns a {@code String} column by name.
+     * @param name the column name.
+     * @return the column.
+     * @throws IllegalArgumentException if the batch has no {@code String} column with the given name.
+     */
+    public StringColumn getStringColumn(String name) {
+        return getTypedColumn(name, StringColumn.class);
+    }
+
+    private <C extends Column> C getTypedColumn(String name, Class<C> columnClass) {
+        Column column = getColumn(name);
+        if (!columnClass.isInstance(column)) {
+            throw new IllegalArgumentException(String.format("Column %s is of type %s", name, column.getType()));
+        }
+        return columnClass.cast(column);
+    }
+}
@@ -0,0 +1,38 @@
+package com.kinnovatio.utils.columnar;
+
+/**
+ * A column of {@code double} values. Null rows hold the default value ({@code 0}) in the value array.
+ */
+public final class DoubleColumn extends Column {
+    private final double[] values;
+
+    DoubleColumn(String name, double[] values, long[] nullBitmap, int invalidCount) {
+        super(name, values.length, nullBitmap, invalidCount);
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of a row. Check {@link #isNull(int)} first if the column may contain nulls.
+     * @param row the row index.
+     * @return the row value.
+     */
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    /**
+     * The backing value array of the column.
+     * @return the values.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColumnType getType() {
+        return ColumnType.DOUBLE;
+    }
+}
@@ -0,0 +1,38 @@
+package com.kinnovatio.utils.columnar;
+
+/**
+ * A column of {@code long} values. Null rows hold the default value ({@code 0}) in the value array.
+ */
+public final class LongColumn extends Column {
+    private final long[] values;
+
+    LongColumn(String name, long[] values, long[] nullBitmap, int invalidCount) {
+        super(name, values.length, nullBitmap, invalidCount);
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of a row. Check {@link #isNull(int)} first if the column may contain nulls.
+     * @param row the row index.
+     * @return the row value.
+     */
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    /**
+     * The backing value array of the column.
+     * @return the values.
+     */
+    public long[] getValues() {
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColumnType getType() {
+        return ColumnType.LONG;
+    }
+}
@@ -0,0 +1,60 @@
+package com.kinnovatio.utils.columnar;
+
+import java.util.List;
+
+/**
+ * A dictionary-encoded column of {@code String} values. Each row holds a code which indexes into the dictionary
+ * of distinct values. Null rows hold the code {@code -1}.
+ */
+public final class StringColumn extends Column {
+    private final int[] codes;
+    private final List<String> dictionary;
+
+    StringColumn(String name, int[] codes, List<String> dictionary, long[] nullBitmap, int invalidCount) {
+        super(name, codes.length, nullBitmap, invalidCount);
+        this.codes = codes;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Returns the decoded value of a row.
+     * @param row the row index.
+     * @return the row value, or {@code null} if the row is null.
+     */
+    public String getString(int row) {
+        return codes[row] < 0 ? null : dictionary.get(codes[row]);
+    }
+
+    /**
+     * Returns the dictionary code of a row.
+     * @param row the row index.
+     * @return the dictionary code, or {@code -1} if the row is null.
+     */
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    /**
+     * The backing code array of the column.
+     * @return the dictionary codes.
+     */
+    public int[] getCodes() {
+        return codes;
+    }
+
+    /**
+     * The distinct values of the column, in order of first appearance in the batch.
+     * @return the dictionary.
+     */
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ColumnType getType() {
+        return ColumnType.STRING;
+    }
+}
@@ -0,0 +1,368 @@
+package com.kinnovatio.utils.columnar;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.kinnovatio.utils.ParseValue;
+import com.kinnovatio.utils.ParsedValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Converts batches of {@code Struct} records into columnar form: primitive {@code long[]}, {@code double[]} and
+ * {@code boolean[]} columns with null bitmaps, and dictionary-encoded {@code String} columns.
+ *
+ * The values are parsed with the same semantics as the non-throwing methods of {@link ParseValue}. Each column reads a single node per record,
+ * addressed by a dotted path through nested {@code Struct} objects. If the node is missing, is a
+ * {@code NULL_VALUE} or cannot be parsed to the column type, the row is marked as null.
+ *
+ * Large batches are split into row ranges which are converted in parallel on a {@link ForkJoinPool}. The converter
+ * is immutable and can be shared across threads.
+ * <pre>{@code
+ * StructColumnarConverter converter = StructColumnarConverter.create()
+ *         .withColumn("timestamp", "data.timestamp", ColumnType.LONG)
+ *         .withColumn("value", "data.value", ColumnType.DOUBLE)
+ *         .withColumn("quality", "data.quality", ColumnType.STRING);
+ * ColumnarBatch batch = converter.convert(records);
+ * }</pre>
+ */
+@AutoValue
+public abstract class StructColumnarConverter {
+    protected static final int DEFAULT_SPLIT_THRESHOLD = 8192;
+    // Row ranges are split on 64-row boundaries so that parallel tasks never write to the same null bitmap word.
+    protected static final int MIN_SPLIT_THRESHOLD = 64;
+
+    private static Builder builder() {
+        return new AutoValue_StructColumnarConverter.Builder()
+                .setColumns(List.of())
+                .setSplitThreshold(DEFAULT_SPLIT_THRESHOLD)
+                .setPool(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initialize a converter with an empty schema. Add columns via {@link #withColumn(String, String, ColumnType)}.
+     *
+     * @return the converter.
+     */
+    public static StructColumnarConverter create() {
+        return StructColumnarConverter.builder().build();
+    }
+
+    abstract Builder toBuilder();
+
+    /**
+     * The output columns of the converter, in schema order.
+     * @return the column specifications.
+     */
+    public abstract List<ColumnSpec> getColumns();
+
+    abstract int getSplitThreshold();
+
+    abstract ForkJoinPool getPool();
+
+    /**
+     * Adds a column to the schema.
+     *
+     * @param name The name of the output column.
+     * @param path The path of the node to parse, separated by period ("."). Ex: "parent.child.grandChild"
+     * @param type The target type of the column.
+     * @return The {@link StructColumnarConverter} with the column added.
+     */
+    public StructColumnarConverter withColumn(String name, String path, ColumnType type) {
+        return withColumn(ColumnSpec.of(name, path, type));
+    }
+
+    /**
+     * Adds a column to the schema.
+     *
+     * @param column The column specification.
+     * @return The {@link StructColumnarConverter} with the column added.
+     */
+    public StructColumnarConverter withColumn(ColumnSpec column) {
+        Objects.requireNonNull(column, "Column cannot be null");
+        Preconditions.checkArgument(getColumns().stream().noneMatch(spec -> spec.getName().equals(column.getName())),
+                String.format("The schema already contains a column named %s", column.getName()));
+        List<ColumnSpec> columns = new ArrayList<>(getColumns());
+        columns.add(column);
+        return toBuilder().setColumns(List.copyOf(columns)).build();
+    }
+
+    /**
+     * Sets the number of rows below which a batch (or a range of a batch) is converted sequentially instead of
+     * being split further into parallel tasks.
+     *
+     * The default split threshold is 8192 rows.
+     * @param rows The split threshold. Minimum 64.
+     * @return The {@link StructColumnarConverter} with the split threshold configured.
+     */
+    public StructColumnarConverter withSplitThreshold(int rows) {
+        Preconditions.checkArgument(rows >= MIN_SPLIT_THRESHOLD,
+                String.format("The split threshold must be at least %d rows", MIN_SPLIT_THRESHOLD));
+        return toBuilder().setSplitThreshold(rows).build();
+    }
+
+    /**
+     * Sets the {@link ForkJoinPool} to run the parallel conversion on.
+     *
+     * The default is the {@link ForkJoinPool#commonPool()}.
+     * @param pool The pool to use.
+     * @return The {@link StructColumnarConverter} with the pool configured.
+     */
+    public StructColumnarConverter withPool(ForkJoinPool pool) {
+        Objects.requireNonNull(pool, "Pool cannot be null");
+        return toBuilder().setPool(pool).build();
+    }
+
+    /**
+     * Converts a batch of {@code Struct} records into columnar form.
+     *
+     * @param batch The records to convert. Must not contain {@code null} entries.
+     * @return The columnar batch, with one row per record in the input order.
+     */
+    public ColumnarBatch convert(List<Struct> batch) {
+        Objects.requireNonNull(batch, "Batch cannot be null");
+        Preconditions.checkState(!getColumns().isEmpty(), "The schema must contain at least one column.");
+
+        List<Struct> rows = batch instanceof RandomAccess ? batch : new ArrayList<>(batch);
+        Conversion conversion = new Conversion(getColumns(), rows);
+        ConvertTask task = new ConvertTask(conversion, 0, rows.size(), getSplitThreshold());
+        List<Segment> segments = rows.size() <= getSplitThreshold() ? task.compute() : getPool().invoke(task);
+
+        return conversion.finish(segments);
+    }
+
+    /*
+    Holds the shared output arrays of a single conversion. Parallel tasks write to disjoint row ranges.
+     */
+    private static final class Conversion {
+        private final List<ColumnSpec> specs;
+        private final String[][] paths;
+        private final ColumnType[] types;
+        private final List<Struct> rows;
+        private final long[][] nullBitmaps;
+        private final Object[] values;
+
+        Conversion(List<ColumnSpec> specs, List<Struct> rows) {
+            this.specs = specs;
+            this.rows = rows;
+            int size = rows.size();
+            paths = new String[specs.size()][];
+            types = new ColumnType[specs.size()];
+            nullBitmaps = new long[specs.size()][];
+            values = new Object[specs.size()];
+            for (int c = 0; c < specs.size(); c++) {
+                paths[c] = specs.get(c).getPath().toArray(new String[0]);
+                types[c] = specs.get(c).getType();
+                nullBitmaps[c] = new long[(size + 63) >>> 6];
+                values[c] = switch (types[c]) {
+                    case LONG -> new long[size];
+                    case DOUBLE -> new double[size];
+                    case BOOLEAN -> new boolean[size];
+                    case STRING -> new int[size];
+                };
+            }
+        }
+
+        /*
+        Converts the rows [from, to) and returns the local string dictionaries and invalid counts of the range.
+         */
+        Segment convertRange(int from, int to) {
+            Segment segment = new Segment(from, to, types.length);
+            for (int row = from; row < to; row++) {
+                Struct struct = Objects.requireNonNull(rows.get(row), "Batch cannot contain null entries");
+                for (int c = 0; c < types.length; c++) {
+                    Value value = lookup(struct, paths[c]);
+                    if (null == value) {
+                        setNull(c, row);
+                        if (types[c] == ColumnType.STRING) {
+                            ((int[]) values[c])[row] = -1;
+                        }
+                    } else if (!parseInto(c, row, value, segment)) {
+                        setNull(c, row);
+                        segment.invalidCounts[c]++;
+                    }
+                }
+            }
+            return segment;
+        }
+
+        private boolean parseInto(int c, int row, Value value, Segment segment) {
+            ParsedValue parsed = segment.parsed;
+            switch (types[c]) {
+                case LONG -> {
+                    if (!ParseValue.tryParseLong(value, parsed)) {
+                        return false;
+                    }
+                    ((long[]) values[c])[row] = parsed.getLong();
+                }
+                case DOUBLE -> {
+                    if (!ParseValue.tryParseDouble(value, parsed)) {
+                        return false;
+                    }
+                    ((double[]) values[c])[row] = parsed.getDouble();
+                }
+                case BOOLEAN -> {
+                    if (!ParseValue.tryParseBoolean(value, parsed)) {
+                        return false;
+                    }
+                    ((boolean[]) values[c])[row] = parsed.getBoolean();
+                }
+                case STRING -> ((int[]) values[c])[row] = segment.encode(c, ParseValue.parseString(value));
+            }
+            return true;
+        }
+
+        private void setNull(int c, int row) {
+            nullBitmaps[c][row >>> 6] |= 1L << row;
+        }
+
+        /*
+        Merges the local string dictionaries of the segments and builds the columns.
+         */
+        ColumnarBatch finish(List<Segment> segments) {
+            List<Column> columns = new ArrayList<>(types.length);
+            for (int c = 0; c < types.length; c++) {
+                int invalidCount = 0;
+                for (Segment segment : segments) {
+                    invalidCount += segment.invalidCounts[c];
+                }
+                String name = specs.get(c).getName();
+                columns.add(switch (types[c]) {
+                    case LONG -> new LongColumn(name, (long[]) values[c], nullBitmaps[c], invalidCount);
+                    case DOUBLE -> new DoubleColumn(name, (double[]) values[c], nullBitmaps[c], invalidCount);
+                    case BOOLEAN -> new BooleanColumn(name, (boolean[]) values[c], nullBitmaps[c], invalidCount);
+                    case STRING -> new StringColumn(name, (int[]) values[c],
+                            mergeDictionaries(c, segments), nullBitmaps[c], invalidCount);
+                });
+            }
+            return new ColumnarBatch(rows.size(), columns);
+        }
+
+        private List<String> mergeDictionaries(int c, List<Segment> segments) {
+            int[] codes = (int[]) values[c];
+            Map<String, Integer> dictionaryIndex = new HashMap<>();
+            List<String> dictionary = new ArrayList<>();
+            for (Segment segment : segments) {
+                List<String> localDictionary = segment.dictionaries[c];
+                if (null == localDictionary) {
+                    continue;
+                }
+                int[] remap = new int[localDictionary.size()];
+                for (int i = 0; i < remap.length; i++) {
+                    String entry = localDictionary.get(i);
+                    remap[i] = dictionaryIndex.computeIfAbsent(entry, key -> {
+                        dictionary.add(key);
+                        return dictionary.size() - 1;
+                    });
+                }
+                for (int row = segment.from; row < segment.to; row++) {
+                    if (codes[row] >= 0) {
+                        codes[row] = remap[codes[row]];
+                    }
+                }
+            }
+            return List.copyOf(dictionary);
+        }
+
+        /*
+        Resolves the node at the path. Returns null if the node is missing or is a NULL_VALUE.
+         */
+        private static Value lookup(Struct struct, String[] path) {
+            Struct current = struct;
+            for (int i = 0; i < path.length - 1; i++) {
+                Value next = current.getFieldsOrDefault(path[i], null);
+                if (null == next || !next.hasStructValue()) {
+                    return null;
+                }
+                current = next.getStructValue();
+            }
+            Value value = current.getFieldsOrDefault(path[path.length - 1], null);
+            return null == value || value.hasNullValue() ? null : value;
+        }
+    }
+
+    /*
+    The per-range conversion state: local string dictionaries and invalid value counts.
+     */
+    private static final class Segment {
+        private final int from;
+        private final int to;
+        private final int[] invalidCounts;
+        private final List<String>[] dictionaries;
+        private final Map<String, Integer>[] dictionaryIndexes;
+        private final ParsedValue parsed = new ParsedValue();
+
+        @SuppressWarnings("unchecked")
+        Segment(int from, int to, int columnCount) {
+            this.from = from;
+            this.to = to;
+            invalidCounts = new int[columnCount];
+            dictionaries = new List[columnCount];
+            dictionaryIndexes = new Map[columnCount];
+        }
+
+        int encode(int c, String value) {
+            if (null == dictionaries[c]) {
+                dictionaries[c] = new ArrayList<>();
+                dictionaryIndexes[c] = new HashMap<>();
+            }
+            Integer code = dictionaryIndexes[c].get(value);
+            if (null == code) {
+                code = dictionaries[c].size();
+                dictionaries[c].add(value);
+                dictionaryIndexes[c].put(value, code);
+            }
+            return code;
+        }
+    }
+
+    /*
+    Splits the row range in halves (aligned to 64 rows) until it is below the split threshold.
+     */
+    private static final class ConvertTask extends RecursiveTask<List<Segment>> {
+        private final Conversion conversion;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        ConvertTask(Conversion conversion, int from, int to, int threshold) {
+            this.conversion = conversion;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<Segment> compute() {
+            if (to - from <= threshold) {
+                List<Segment> segments = new ArrayList<>(1);
+                segments.add(conversion.convertRange(from, to));
+                return segments;
+            }
+            int mid = from + Math.max(64, ((to - from) >>> 1) & ~63);
+            ConvertTask left = new ConvertTask(conversion, from, mid, threshold);
+            ConvertTask right = new ConvertTask(conversion, mid, to, threshold);
+            right.fork();
+            List<Segment> segments = left.compute();
+            segments.addAll(right.join());
+            return segments;
+        }
+    }
+
+    @AutoValue.Builder
+    abstract static class Builder {
+        abstract Builder setColumns(List<ColumnSpec> value);
+        abstract Builder setSplitThreshold(int value);
+        abstract Builder setPool(ForkJoinPool value);
+
+        abstract StructColumnarConverter build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.kinnovatio.utils.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies the {@code Struct} path of a record component or {@code AutoValue} property of a
+ * {@link StructMapper} type.
+ *
+ * The path is separated by period ("."). Ex: "parent.child.grandChild". The value is coerced to the type of the
+ * component with the {@code ParseValue} semantics. See {@link StructMapperSupport} for the supported types.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.METHOD, ElementType.RECORD_COMPONENT})
+public @interface StructField {
+
+    /**
+     * The path of the node to map.
+     * @return the path.
+     */
+    String value();
+}
@@ -0,0 +1,29 @@
+package com.kinnovatio.utils.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record or an {@code AutoValue} class for generation of a {@code Struct} mapper by the
+ * {@link StructMapperProcessor}.
+ *
+ * All record components (or {@code AutoValue} properties) must be annotated with {@link StructField}. The
+ * processor generates the class {@code <TypeName>StructMapper} in the same package, with static
+ * {@code map(Struct)} and {@code mapAll(List<Struct>)} methods.
+ * <pre>{@code
+ * @StructMapper
+ * public record Reading(@StructField("externalId") String externalId,
+ *                       @StructField("data.timestamp") long timestamp,
+ *                       @StructField("data.value") OptionalDouble value) {}
+ *
+ * Reading reading = ReadingStructMapper.map(struct);
+ * }</pre>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface StructMapper {
+}
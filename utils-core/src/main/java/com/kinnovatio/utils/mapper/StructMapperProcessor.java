@@ -0,0 +1,475 @@
+package com.kinnovatio.utils.mapper;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates {@code Struct} mappers for types annotated with {@link StructMapper}.
+ *
+ * For a record, the generated mapper calls the canonical constructor. For an {@code AutoValue} class without a
+ * builder, it calls the generated {@code AutoValue_} constructor, which takes the properties in AutoValue's
+ * property order (inherited properties first). For an {@code AutoValue} class with an {@code AutoValue.Builder},
+ * it sets each property on a builder and builds the instance. The builder is created with a non-private static
+ * factory method of the class if there is one (so builder defaults apply), otherwise with the generated
+ * {@code AutoValue_<Type>.Builder}, which is accessible from the package. The mapper is
+ * plain straight-line code: each path is resolved with a chain of {@link StructMapperSupport#field} calls
+ * (sharing common path prefixes) and coerced with the {@code StructMapperSupport} method matching the component
+ * type. The numeric and boolean coercions share one scratch {@code ParsedValue} per {@code map()} call, and per
+ * {@code mapAll()} call for a list, so the mapping does not allocate parse results.
+ *
+ * To enable the processor, add {@code utils-core} to the annotation processor path of your build, next to
+ * {@code auto-value} if you use it.
+ */
+@SupportedAnnotationTypes("com.kinnovatio.utils.mapper.StructMapper")
+public class StructMapperProcessor extends AbstractProcessor {
+    private static final String AUTO_VALUE = "com.google.auto.value.AutoValue";
+    private static final String AUTO_VALUE_BUILDER = "com.google.auto.value.AutoValue.Builder";
+    private static final String SUPPORT = "com.kinnovatio.utils.mapper.StructMapperSupport";
+
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(StructMapper.class))) {
+            try {
+                generate(type);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write the Struct mapper: " + e.getMessage(), type);
+            }
+        }
+        return true;
+    }
+
+    /*
+    A component (record component or AutoValue property) to map.
+     */
+    private record Component(Element element, TypeMirror type, String path) {}
+
+    private void generate(TypeElement type) throws IOException {
+        List<Component> components;
+        TypeElement builder = null;
+        if (type.getKind() == ElementKind.RECORD) {
+            components = recordComponents(type);
+        } else if (type.getKind() == ElementKind.CLASS && hasAnnotation(type, AUTO_VALUE)) {
+            components = autoValueProperties(type);
+            builder = autoValueBuilder(type);
+        } else {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "@StructMapper can only be applied to records and @AutoValue classes.", type);
+            return;
+        }
+        if (null == components) {
+            return;
+        }
+
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String mapperName = binaryNameSuffix(type) + "StructMapper";
+        String targetType = type.getQualifiedName().toString();
+
+        // Resolve each path with a chain of field() calls. Common path prefixes are resolved once.
+        Map<String, String> resolvedPaths = new LinkedHashMap<>();
+        List<String> statements = new ArrayList<>();
+        List<String> arguments = new ArrayList<>();
+        for (Component component : components) {
+            String coercion = coercion(component, resolvedPaths, statements);
+            if (null == coercion) {
+                return;
+            }
+            arguments.add(coercion);
+        }
+        String instance = null == builder
+                ? constructorCall(type, arguments)
+                : builderCall(type, builder, components, arguments);
+        if (null == instance) {
+            return;
+        }
+
+        JavaFileObject file = filer.createSourceFile(
+                packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+        try (Writer writer = file.openWriter()) {
+            StringBuilder source = new StringBuilder();
+            if (!packageName.isEmpty()) {
+                source.append("package ").append(packageName).append(";\n\n");
+            }
+            source.append("@javax.annotation.processing.Generated(\"")
+                    .append(StructMapperProcessor.class.getName()).append("\")\n")
+                    .append("public final class ").append(mapperName).append(" {\n\n")
+                    .append("    private ").append(mapperName).append("() {\n    }\n\n")
+                    .append("    /**\n     * Maps a {@code Struct} to {@code ").append(type.getSimpleName())
+                    .append("}.\n     */\n")
+                    .append("    public static ").append(targetType).append(" map(com.google.protobuf.Struct struct) {\n")
+                    .append("        return map(struct, new com.kinnovatio.utils.ParsedValue());\n")
+                    .append("    }\n\n")
+                    .append("    private static ").append(targetType)
+                    .append(" map(com.google.protobuf.Struct struct, com.kinnovatio.utils.ParsedValue parsed) {\n")
+                    .append("        java.util.Objects.requireNonNull(struct, \"Struct cannot be null.\");\n");
+            for (String statement : statements) {
+                source.append("        ").append(statement).append("\n");
+            }
+            source.append("        return ").append(instance).append(";\n    }\n\n")
+                    .append("    /**\n     * Maps a list of {@code Struct} to {@code ").append(type.getSimpleName())
+                    .append("}.\n     */\n")
+                    .append("    public static java.util.List<").append(targetType)
+                    .append("> mapAll(java.util.List<com.google.protobuf.Struct> structs) {\n")
+                    .append("        java.util.List<").append(targetType)
+                    .append("> results = new java.util.ArrayList<>(structs.size());\n")
+                    .append("        com.kinnovatio.utils.ParsedValue parsed = ")
+                    .append("new com.kinnovatio.utils.ParsedValue();\n")
+                    .append("        for (com.google.protobuf.Struct struct : structs) {\n")
+                    .append("            results.add(map(struct, parsed));\n")
+                    .append("        }\n")
+                    .append("        return results;\n")
+                    .append("    }\n}\n");
+            writer.write(source.toString());
+        }
+    }
+
+    private List<Component> recordComponents(TypeElement type) {
+        List<Component> components = new ArrayList<>();
+        for (RecordComponentElement element : type.getRecordComponents()) {
+            StructField field = element.getAnnotation(StructField.class);
+            if (null == field) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "All record components of a @StructMapper type must be annotated with @StructField.", element);
+                return null;
+            }
+            components.add(new Component(element, element.asType(), field.value()));
+        }
+        return components;
+    }
+
+    /*
+    The AutoValue properties are the abstract, no-arg, non-void methods, including inherited ones, excluding methods
+    returning the builder.
+     */
+    private List<Component> autoValueProperties(TypeElement type) {
+        List<Component> components = new ArrayList<>();
+        for (ExecutableElement method : propertyOrder(type)) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)
+                    || method.getModifiers().contains(Modifier.STATIC)
+                    || !method.getParameters().isEmpty()
+                    || method.getReturnType().getKind() == TypeKind.VOID
+                    || (method.getReturnType() instanceof DeclaredType declared
+                            && hasAnnotation(declared.asElement(), AUTO_VALUE_BUILDER))) {
+                continue;
+            }
+            StructField field = method.getAnnotation(StructField.class);
+            if (null == field) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "All properties of a @StructMapper type must be annotated with @StructField.", method);
+                return null;
+            }
+            components.add(new Component(method, method.getReturnType(), field.value()));
+        }
+        return components;
+    }
+
+    /*
+    The methods of the type in AutoValue's property order: the methods of the super interfaces first, then of the
+    superclass, then the type's own methods. Methods overridden by another member are left out.
+     */
+    private List<ExecutableElement> propertyOrder(TypeElement type) {
+        Set<ExecutableElement> members = new HashSet<>(
+                ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type)));
+        Set<ExecutableElement> ordered = new LinkedHashSet<>();
+        collectMethods(type, ordered);
+        ordered.retainAll(members);
+        return new ArrayList<>(ordered);
+    }
+
+    private void collectMethods(TypeElement type, Set<ExecutableElement> methods) {
+        Types types = processingEnv.getTypeUtils();
+        for (TypeMirror superInterface : type.getInterfaces()) {
+            collectMethods((TypeElement) types.asElement(superInterface), methods);
+        }
+        if (type.getSuperclass().getKind() == TypeKind.DECLARED) {
+            collectMethods((TypeElement) types.asElement(type.getSuperclass()), methods);
+        }
+        methods.addAll(ElementFilter.methodsIn(type.getEnclosedElements()));
+    }
+
+    private static TypeElement autoValueBuilder(TypeElement type) {
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            if (hasAnnotation(nested, AUTO_VALUE_BUILDER)) {
+                return nested;
+            }
+        }
+        return null;
+    }
+
+    private static String constructorCall(TypeElement type, List<String> arguments) {
+        String constructor = type.getKind() == ElementKind.RECORD
+                ? "new " + type.getQualifiedName()
+                : "new AutoValue_" + binaryNameSuffix(type);
+        return constructor + "(\n                " + String.join(",\n                ", arguments) + ")";
+    }
+
+    /*
+    Returns the builder expression: the builder factory, a setter call per property and the build method. Reports an
+    error and returns null if a setter or the build method cannot be found.
+     */
+    private String builderCall(TypeElement type, TypeElement builder, List<Component> components,
+                               List<String> arguments) {
+        Types types = processingEnv.getTypeUtils();
+        List<ExecutableElement> builderMethods =
+                ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(builder));
+
+        StringBuilder call = new StringBuilder(builderFactory(type, builder));
+        for (int i = 0; i < components.size(); i++) {
+            String property = propertyName(components.get(i).element().getSimpleName().toString(), components);
+            ExecutableElement setter = null;
+            for (ExecutableElement method : builderMethods) {
+                String name = method.getSimpleName().toString();
+                if (method.getModifiers().contains(Modifier.ABSTRACT)
+                        && method.getParameters().size() == 1
+                        && (name.equals(property) || name.equals("set" + capitalize(property))
+                                || name.equals(components.get(i).element().getSimpleName().toString()))) {
+                    setter = method;
+                    break;
+                }
+            }
+            if (null == setter) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                        "No setter for the property in the @AutoValue.Builder " + builder.getSimpleName() + ".",
+                        components.get(i).element());
+                return null;
+            }
+            call.append("\n                .").append(setter.getSimpleName()).append('(').append(arguments.get(i))
+                    .append(')');
+        }
+
+        // Prefer a concrete build method, which may validate the instance, over the abstract one.
+        ExecutableElement build = null;
+        for (ExecutableElement method : builderMethods) {
+            if (method.getParameters().isEmpty()
+                    && !method.getModifiers().contains(Modifier.STATIC)
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && types.isSameType(types.erasure(method.getReturnType()), types.erasure(type.asType()))
+                    && (null == build || build.getModifiers().contains(Modifier.ABSTRACT))) {
+                build = method;
+            }
+        }
+        if (null == build) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "No build method in the @AutoValue.Builder " + builder.getSimpleName() + ".", builder);
+            return null;
+        }
+        return call.append("\n                .").append(build.getSimpleName()).append("()").toString();
+    }
+
+    /*
+    A non-private static no-arg method of the type returning the builder, or else the AutoValue generated builder.
+     */
+    private String builderFactory(TypeElement type, TypeElement builder) {
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && method.getParameters().isEmpty()
+                    && types.isSameType(types.erasure(method.getReturnType()), types.erasure(builder.asType()))) {
+                return type.getQualifiedName() + "." + method.getSimpleName() + "()";
+            }
+        }
+        return "new AutoValue_" + binaryNameSuffix(type) + ".Builder()";
+    }
+
+    /*
+    The AutoValue property name of a method: the get/is prefix is removed if all the properties have one.
+     */
+    private static String propertyName(String methodName, List<Component> components) {
+        boolean allPrefixed = components.stream()
+                .map(component -> component.element().getSimpleName().toString())
+                .allMatch(name -> hasPrefix(name, "get") || hasPrefix(name, "is"));
+        if (!allPrefixed) {
+            return methodName;
+        }
+        String stripped = methodName.substring(hasPrefix(methodName, "get") ? 3 : 2);
+        return Character.toLowerCase(stripped.charAt(0)) + stripped.substring(1);
+    }
+
+    private static boolean hasPrefix(String name, String prefix) {
+        return name.length() > prefix.length() && name.startsWith(prefix)
+                && Character.isUpperCase(name.charAt(prefix.length()));
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /*
+    Returns the coercion expression of a component, adding the path resolution statements as needed.
+     */
+    private String coercion(Component component, Map<String, String> resolvedPaths, List<String> statements) {
+        String path = component.path();
+        if (path.isBlank() || path.startsWith(".") || path.endsWith(".") || path.contains("..")) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Invalid @StructField path: " + path, component.element());
+            return null;
+        }
+        String pathLiteral = '"' + escape(path) + '"';
+        TypeMirror type = component.type();
+
+        if (isType(type, "java.util.List") && typeArgument(type).equals("java.lang.String")) {
+            String pathList = java.util.Arrays.stream(path.split("\\."))
+                    .map(part -> '"' + escape(part) + '"')
+                    .collect(Collectors.joining(", "));
+            return "com.kinnovatio.utils.ParseStruct.parseStringList(struct, java.util.List.of(" + pathList + "))";
+        }
+
+        String value = resolve(path, resolvedPaths, statements);
+        String arguments = "(" + value + ", " + pathLiteral + ")";
+        // The numeric and boolean coercions share the scratch ParsedValue of the mapping call.
+        String parseArguments = "(" + value + ", " + pathLiteral + ", parsed)";
+        switch (type.getKind()) {
+            case LONG: return SUPPORT + ".toLong" + parseArguments;
+            case INT: return SUPPORT + ".toInt" + parseArguments;
+            case DOUBLE: return SUPPORT + ".toDouble" + parseArguments;
+            case BOOLEAN: return SUPPORT + ".toBoolean" + parseArguments;
+            default: break;
+        }
+
+        String erasure = processingEnv.getTypeUtils().erasure(type).toString();
+        switch (erasure) {
+            case "java.lang.String": return SUPPORT + ".toString" + arguments;
+            case "java.lang.Long": return SUPPORT + ".toLongOrNull" + parseArguments;
+            case "java.lang.Integer": return SUPPORT + ".toIntOrNull" + parseArguments;
+            case "java.lang.Double": return SUPPORT + ".toDoubleOrNull" + parseArguments;
+            case "java.lang.Boolean": return SUPPORT + ".toBooleanOrNull" + parseArguments;
+            case "java.util.OptionalLong": return SUPPORT + ".toOptionalLong" + parseArguments;
+            case "java.util.OptionalDouble": return SUPPORT + ".toOptionalDouble" + parseArguments;
+            case "com.google.protobuf.Value": return SUPPORT + ".toValue" + arguments;
+            case "com.google.protobuf.Struct": return SUPPORT + ".toStruct" + arguments;
+            case "java.util.Optional":
+                String nullable = switch (typeArgument(type)) {
+                    case "java.lang.String" -> "toString";
+                    case "java.lang.Long" -> "toLongOrNull";
+                    case "java.lang.Integer" -> "toIntOrNull";
+                    case "java.lang.Double" -> "toDoubleOrNull";
+                    case "java.lang.Boolean" -> "toBooleanOrNull";
+                    default -> null;
+                };
+                if (null != nullable) {
+                    return "java.util.Optional.ofNullable(" + SUPPORT + "." + nullable
+                            + (nullable.equals("toString") ? arguments : parseArguments) + ")";
+                }
+                break;
+            default:
+                break;
+        }
+
+        messager.printMessage(Diagnostic.Kind.ERROR,
+                "Unsupported @StructField type: " + type + ". See StructMapperSupport for the supported types.",
+                component.element());
+        return null;
+    }
+
+    /*
+    Returns the variable holding the node at the path, adding statements to resolve it (and its prefixes).
+     */
+    private String resolve(String path, Map<String, String> resolvedPaths, List<String> statements) {
+        String variable = resolvedPaths.get(path);
+        if (null != variable) {
+            return variable;
+        }
+        int split = path.lastIndexOf('.');
+        String parent = split < 0 ? "struct" : resolve(path.substring(0, split), resolvedPaths, statements);
+        String field = split < 0 ? path : path.substring(split + 1);
+        variable = "node" + resolvedPaths.size();
+        statements.add(String.format("com.google.protobuf.Value %s = %s.field(%s, \"%s\");",
+                variable, SUPPORT, parent, escape(field)));
+        resolvedPaths.put(path, variable);
+        return variable;
+    }
+
+    private boolean isType(TypeMirror type, String qualifiedName) {
+        return type.getKind() == TypeKind.DECLARED
+                && processingEnv.getTypeUtils().erasure(type).toString().equals(qualifiedName);
+    }
+
+    private static String typeArgument(TypeMirror type) {
+        if (type instanceof DeclaredType declared && declared.getTypeArguments().size() == 1) {
+            return declared.getTypeArguments().getFirst().toString();
+        }
+        return "";
+    }
+
+    private static boolean hasAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            Element annotation = mirror.getAnnotationType().asElement();
+            if (annotation instanceof TypeElement typeElement
+                    && typeElement.getQualifiedName().contentEquals(annotationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PackageElement packageOf(Element element) {
+        Element current = element;
+        while (!(current instanceof PackageElement)) {
+            current = current.getEnclosingElement();
+        }
+        return (PackageElement) current;
+    }
+
+    /*
+    The name of the type relative to its package, with nested types joined by underscore. This follows the naming
+    of AutoValue generated classes: Outer.Inner -> Outer_Inner.
+     */
+    private static String binaryNameSuffix(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement enclosingType) {
+            name = enclosingType.getSimpleName() + "_" + name;
+            enclosing = enclosingType.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,220 @@
+package com.kinnovatio.utils.mapper;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.kinnovatio.utils.ParseValue;
+import com.kinnovatio.utils.ParsedValue;
+
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+
+/**
+ * Runtime support for the mappers generated by {@link StructMapperProcessor}. The generated code resolves each
+ * path with a straight-line chain of {@code field()} calls and coerces the resolved node with one of the
+ * {@code toXxx()} methods.
+ *
+ * The numeric and boolean coercions parse with the non-throwing {@code ParseValue.tryParseXxx()} methods into a
+ * scratch {@link ParsedValue}, which the generated code creates once per mapping call and passes to each coercion.
+ *
+ * The coercions follow the {@code ParseValue} semantics. A missing node, or a node with a {@code NULL_VALUE},
+ * maps to {@code null}/empty for reference types, and fails with an {@code IllegalArgumentException} for
+ * primitive types. A node which cannot be parsed to the target type always fails with an
+ * {@code IllegalArgumentException}.
+ *
+ * Supported component types: {@code String}, {@code long}/{@code Long}, {@code int}/{@code Integer},
+ * {@code double}/{@code Double}, {@code boolean}/{@code Boolean}, {@code OptionalLong}, {@code OptionalDouble},
+ * {@code Optional<String|Long|Integer|Double|Boolean>}, {@code Value}, {@code Struct} and {@code List<String>}
+ * (which, like {@code ParseStruct.parseStringList()}, fans out over lists).
+ */
+public final class StructMapperSupport {
+
+    private StructMapperSupport() {
+    }
+
+    /**
+     * Returns the field of a {@code Struct}.
+     * @param struct the struct.
+     * @param name the field name.
+     * @return the field value, or {@code null} if the field does not exist.
+     */
+    public static Value field(Struct struct, String name) {
+        return struct.getFieldsOrDefault(name, null);
+    }
+
+    /**
+     * Returns the field of a {@code Value} holding a {@code Struct}.
+     * @param value the value. May be {@code null}.
+     * @param name the field name.
+     * @return the field value, or {@code null} if the value is not a struct or the field does not exist.
+     */
+    public static Value field(Value value, String name) {
+        if (null == value || !value.hasStructValue()) {
+            return null;
+        }
+        return value.getStructValue().getFieldsOrDefault(name, null);
+    }
+
+    /**
+     * Maps a node to a {@code String}, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     */
+    public static String toString(Value value, String path) {
+        return isMissing(value) ? null : ParseValue.parseString(value);
+    }
+
+    /**
+     * Maps a required node to a {@code long}.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static long toLong(Value value, String path, ParsedValue parsed) {
+        if (!ParseValue.tryParseLong(require(value, path), parsed)) {
+            throw invalid(value, path, parsed);
+        }
+        return parsed.getLong();
+    }
+
+    /**
+     * Maps a node to a {@code Long}, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static Long toLongOrNull(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? null : toLong(value, path, parsed);
+    }
+
+    /**
+     * Maps a node to an {@code OptionalLong}, empty if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static OptionalLong toOptionalLong(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? OptionalLong.empty() : OptionalLong.of(toLong(value, path, parsed));
+    }
+
+    /**
+     * Maps a required node to an {@code int}. Fails if the value is outside the int range.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static int toInt(Value value, String path, ParsedValue parsed) {
+        long longValue = toLong(value, path, parsed);
+        if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Unable to map %s. The value %d is outside the int range.",
+                    path, longValue));
+        }
+        return (int) longValue;
+    }
+
+    /**
+     * Maps a node to an {@code Integer}, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static Integer toIntOrNull(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? null : toInt(value, path, parsed);
+    }
+
+    /**
+     * Maps a required node to a {@code double}.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static double toDouble(Value value, String path, ParsedValue parsed) {
+        if (!ParseValue.tryParseDouble(require(value, path), parsed)) {
+            throw invalid(value, path, parsed);
+        }
+        return parsed.getDouble();
+    }
+
+    /**
+     * Maps a node to a {@code Double}, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static Double toDoubleOrNull(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? null : toDouble(value, path, parsed);
+    }
+
+    /**
+     * Maps a node to an {@code OptionalDouble}, empty if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static OptionalDouble toOptionalDouble(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? OptionalDouble.empty() : OptionalDouble.of(toDouble(value, path, parsed));
+    }
+
+    /**
+     * Maps a required node to a {@code boolean}.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static boolean toBoolean(Value value, String path, ParsedValue parsed) {
+        if (!ParseValue.tryParseBoolean(require(value, path), parsed)) {
+            throw invalid(value, path, parsed);
+        }
+        return parsed.getBoolean();
+    }
+
+    /**
+     * Maps a node to a {@code Boolean}, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     * @param parsed the scratch result of the parse calls.
+     */
+    public static Boolean toBooleanOrNull(Value value, String path, ParsedValue parsed) {
+        return isMissing(value) ? null : toBoolean(value, path, parsed);
+    }
+
+    /**
+     * Returns the raw node, or {@code null} if missing.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     */
+    public static Value toValue(Value value, String path) {
+        return isMissing(value) ? null : value;
+    }
+
+    /**
+     * Maps a node to a {@code Struct}, or {@code null} if missing. Fails if the node is not a struct.
+     * @param value the resolved node. May be {@code null}.
+     * @param path the path of the node, used in error messages.
+     */
+    public static Struct toStruct(Value value, String path) {
+        if (isMissing(value)) {
+            return null;
+        }
+        if (!value.hasStructValue()) {
+            throw new IllegalArgumentException(String.format("Unable to map %s to Struct. Identified value type: %s",
+                    path, value.getKindCase()));
+        }
+        return value.getStructValue();
+    }
+
+    private static boolean isMissing(Value value) {
+        return null == value || value.hasNullValue();
+    }
+
+    private static Value require(Value value, String path) {
+        if (isMissing(value)) {
+            throw new IllegalArgumentException(String.format("Unable to map %s. The field is missing or null.", path));
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException invalid(Value value, String path, ParsedValue parsed) {
+        return new IllegalArgumentException(String.format("Unable to map %s. Status: %s, identified value type: %s",
+                path, parsed.getStatus(), value.getKindCase()));
+    }
+}
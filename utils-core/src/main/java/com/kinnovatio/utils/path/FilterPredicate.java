@@ -0,0 +1,146 @@
+package com.kinnovatio.utils.path;
+
+import com.google.protobuf.Value;
+import com.kinnovatio.utils.ParseValue;
+import com.kinnovatio.utils.ParsedValue;
+
+import java.util.List;
+
+/**
+ * A predicate of a filter step, i.e. the expression inside {@code [?( ... )]}. Predicates are evaluated against
+ * the candidate node, referred to as {@code @} in the expression.
+ */
+sealed interface FilterPredicate {
+
+    /**
+     * Evaluates the predicate.
+     *
+     * @param node the candidate node.
+     * @param scratch a holder for the coerced values, reused across the comparisons of one path evaluation.
+     * @return {@code true} if the node matches.
+     */
+    boolean test(Value node, ParsedValue scratch);
+
+    /**
+     * Resolves a relative path ({@code @.a.b}) from the candidate node. Returns {@code null} if the path does not
+     * exist.
+     */
+    static Value resolve(Value node, List<String> path) {
+        Value current = node;
+        for (String field : path) {
+            if (!current.hasStructValue()) {
+                return null;
+            }
+            current = current.getStructValue().getFieldsOrDefault(field, null);
+            if (null == current) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Matches if the relative path exists and is not null: {@code @.quality}
+     */
+    record Exists(List<String> path) implements FilterPredicate {
+        @Override
+        public boolean test(Value node, ParsedValue scratch) {
+            Value value = resolve(node, path);
+            return null != value && !value.hasNullValue();
+        }
+    }
+
+    /**
+     * Compares the value at the relative path with a literal: {@code @.quality == 'good'}. The value is coerced to
+     * the type of the literal using the {@link ParseValue} semantics. Missing values never match.
+     */
+    record Comparison(List<String> path, Operator operator, Value literal) implements FilterPredicate {
+        @Override
+        public boolean test(Value node, ParsedValue scratch) {
+            Value value = resolve(node, path);
+            if (null == value) {
+                return false;
+            }
+            if (literal.hasNullValue()) {
+                return switch (operator) {
+                    case EQ -> value.hasNullValue();
+                    case NE -> !value.hasNullValue();
+                    default -> false;
+                };
+            }
+            if (value.hasNullValue()) {
+                return operator == Operator.NE;
+            }
+
+            int comparison;
+            if (literal.hasNumberValue()) {
+                if (!ParseValue.tryParseDouble(value, scratch)) {
+                    return operator == Operator.NE;
+                }
+                comparison = Double.compare(scratch.getDouble(), literal.getNumberValue());
+            } else if (literal.hasBoolValue()) {
+                if (!ParseValue.tryParseBoolean(value, scratch)) {
+                    return operator == Operator.NE;
+                }
+                comparison = Boolean.compare(scratch.getBoolean(), literal.getBoolValue());
+            } else {
+                comparison = ParseValue.parseString(value).compareTo(literal.getStringValue());
+            }
+            return operator.matches(comparison);
+        }
+    }
+
+    /**
+     * Negates a predicate: {@code !@.quality}
+     */
+    record Not(FilterPredicate predicate) implements FilterPredicate {
+        @Override
+        public boolean test(Value node, ParsedValue scratch) {
+            return !predicate.test(node, scratch);
+        }
+    }
+
+    /**
+     * Matches if both predicates match: {@code @.a && @.b}
+     */
+    record And(FilterPredicate left, FilterPredicate right) implements FilterPredicate {
+        @Override
+        public boolean test(Value node, ParsedValue scratch) {
+            return left.test(node, scratch) && right.test(node, scratch);
+        }
+    }
+
+    /**
+     * Matches if at least one of the predicates match: {@code @.a || @.b}
+     */
+    record Or(FilterPredicate left, FilterPredicate right) implements FilterPredicate {
+        @Override
+        public boolean test(Value node, ParsedValue scratch) {
+            return left.test(node, scratch) || right.test(node, scratch);
+        }
+    }
+
+    /**
+     * The comparison operators.
+     */
+    enum Operator {
+        EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean matches(int comparison) {
+            return switch (this) {
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+            };
+        }
+    }
+}
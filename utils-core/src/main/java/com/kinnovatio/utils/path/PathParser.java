@@ -0,0 +1,276 @@
+package com.kinnovatio.utils.path;
+
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses a path expression into a list of {@link Step}s. See {@link StructPath} for the syntax.
+ */
+final class PathParser {
+    private final String expression;
+    private int pos = 0;
+
+    private PathParser(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Parses the expression.
+     *
+     * @param expression the path expression.
+     * @return the steps of the expression.
+     * @throws IllegalArgumentException if the expression is invalid.
+     */
+    static List<Step> parse(String expression) {
+        return new PathParser(expression).parseSteps();
+    }
+
+    private List<Step> parseSteps() {
+        List<Step> steps = new ArrayList<>();
+        skipWhitespace();
+        if (peek('$')) {
+            pos++;
+        } else if (consume("*")) {
+            steps.add(new Step.Wildcard());
+        } else if (!atEnd() && !peek('.') && !peek('[')) {
+            // The expression starts with a bare field name: "parent.child"
+            steps.add(new Step.Field(parseName(), true));
+        }
+
+        while (!atEnd()) {
+            if (consume("..")) {
+                if (peek('[')) {
+                    steps.add(new Step.RecursiveDescent(parseBracket(false)));
+                } else if (consume("*")) {
+                    steps.add(new Step.RecursiveDescent(new Step.Wildcard()));
+                } else {
+                    steps.add(new Step.RecursiveDescent(new Step.Field(parseName(), false)));
+                }
+            } else if (consume(".")) {
+                if (consume("*")) {
+                    steps.add(new Step.Wildcard());
+                } else {
+                    steps.add(new Step.Field(parseName(), true));
+                }
+            } else if (peek('[')) {
+                steps.add(parseBracket(true));
+            } else {
+                throw error("Expected '.', '..' or '['");
+            }
+            skipWhitespace();
+        }
+
+        return List.copyOf(steps);
+    }
+
+    /*
+    Parses a bracket step: [*], ['name'], [0], [1:3], [?(predicate)]
+     */
+    private Step parseBracket(boolean fanOut) {
+        expect("[");
+        skipWhitespace();
+        Step step;
+        if (consume("*")) {
+            step = new Step.Wildcard();
+        } else if (peek('\'') || peek('"')) {
+            step = new Step.Field(parseQuoted(), fanOut);
+        } else if (consume("?")) {
+            skipWhitespace();
+            expect("(");
+            FilterPredicate predicate = parseOr();
+            skipWhitespace();
+            expect(")");
+            step = new Step.Filter(predicate);
+        } else {
+            Integer start = peek(':') ? null : parseInteger();
+            skipWhitespace();
+            if (consume(":")) {
+                skipWhitespace();
+                Integer end = peek(']') ? null : parseInteger();
+                step = new Step.Slice(start, end);
+            } else if (null == start) {
+                throw error("Expected an index");
+            } else {
+                step = new Step.Index(start);
+            }
+        }
+        skipWhitespace();
+        expect("]");
+        return step;
+    }
+
+    private FilterPredicate parseOr() {
+        FilterPredicate left = parseAnd();
+        skipWhitespace();
+        while (consume("||")) {
+            left = new FilterPredicate.Or(left, parseAnd());
+            skipWhitespace();
+        }
+        return left;
+    }
+
+    private FilterPredicate parseAnd() {
+        FilterPredicate left = parseUnary();
+        skipWhitespace();
+        while (consume("&&")) {
+            left = new FilterPredicate.And(left, parseUnary());
+            skipWhitespace();
+        }
+        return left;
+    }
+
+    private FilterPredicate parseUnary() {
+        skipWhitespace();
+        if (consume("!")) {
+            return new FilterPredicate.Not(parseUnary());
+        }
+        if (consume("(")) {
+            FilterPredicate predicate = parseOr();
+            skipWhitespace();
+            expect(")");
+            return predicate;
+        }
+
+        List<String> path = parseRelativePath();
+        skipWhitespace();
+        for (FilterPredicate.Operator operator : new FilterPredicate.Operator[] {
+                FilterPredicate.Operator.EQ, FilterPredicate.Operator.NE,
+                FilterPredicate.Operator.LE, FilterPredicate.Operator.GE,
+                FilterPredicate.Operator.LT, FilterPredicate.Operator.GT}) {
+            if (consume(operator.symbol)) {
+                skipWhitespace();
+                return new FilterPredicate.Comparison(path, operator, parseLiteral());
+            }
+        }
+        return new FilterPredicate.Exists(path);
+    }
+
+    /*
+    Parses a relative path: @, @.a.b, @['a']
+     */
+    private List<String> parseRelativePath() {
+        expect("@");
+        List<String> path = new ArrayList<>();
+        while (true) {
+            if (consume(".")) {
+                path.add(parseName());
+            } else if (peek('[')) {
+                expect("[");
+                skipWhitespace();
+                path.add(parseQuoted());
+                skipWhitespace();
+                expect("]");
+            } else {
+                return List.copyOf(path);
+            }
+        }
+    }
+
+    private Value parseLiteral() {
+        if (peek('\'') || peek('"')) {
+            return Values.of(parseQuoted());
+        }
+        if (consume("true")) {
+            return Values.of(true);
+        }
+        if (consume("false")) {
+            return Values.of(false);
+        }
+        if (consume("null")) {
+            return Values.ofNull();
+        }
+        int start = pos;
+        while (!atEnd() && "+-.0123456789eE".indexOf(expression.charAt(pos)) >= 0) {
+            pos++;
+        }
+        try {
+            return Values.of(Double.parseDouble(expression.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Expected a literal (string, number, true, false or null)");
+        }
+    }
+
+    private String parseName() {
+        int start = pos;
+        while (!atEnd() && isNameChar(expression.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected a field name");
+        }
+        return expression.substring(start, pos);
+    }
+
+    private String parseQuoted() {
+        char quote = expression.charAt(pos++);
+        StringBuilder builder = new StringBuilder();
+        while (!atEnd() && expression.charAt(pos) != quote) {
+            char c = expression.charAt(pos++);
+            if (c == '\\' && !atEnd()) {
+                c = expression.charAt(pos++);
+            }
+            builder.append(c);
+        }
+        expect(String.valueOf(quote));
+        return builder.toString();
+    }
+
+    private int parseInteger() {
+        int start = pos;
+        if (peek('-')) {
+            pos++;
+        }
+        while (!atEnd() && Character.isDigit(expression.charAt(pos))) {
+            pos++;
+        }
+        try {
+            return Integer.parseInt(expression.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Expected an integer");
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return c != '.' && c != '[' && c != ']' && c != '(' && c != ')' && c != '\'' && c != '"'
+                && c != '=' && c != '!' && c != '<' && c != '>' && c != '&' && c != '|'
+                && !Character.isWhitespace(c);
+    }
+
+    private boolean atEnd() {
+        return pos >= expression.length();
+    }
+
+    private boolean peek(char c) {
+        return !atEnd() && expression.charAt(pos) == c;
+    }
+
+    private boolean consume(String token) {
+        if (expression.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!consume(token)) {
+            throw error("Expected '" + token + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (!atEnd() && Character.isWhitespace(expression.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("Invalid path expression \"%s\" at position %d: %s",
+                expression, pos, message));
+    }
+}
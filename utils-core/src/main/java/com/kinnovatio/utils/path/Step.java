@@ -0,0 +1,40 @@
+package com.kinnovatio.utils.path;
+
+/**
+ * A single step of a compiled {@link StructPath}. Each step selects zero or more child nodes from its input node.
+ */
+sealed interface Step {
+
+    /**
+     * Selects a named field of a {@code Struct}. If {@code fanOut} is set and the input is a list, the step is
+     * applied to each element of the list (the same behavior as {@code ParseStruct}).
+     */
+    record Field(String name, boolean fanOut) implements Step {}
+
+    /**
+     * Selects all field values of a {@code Struct} or all elements of a list.
+     */
+    record Wildcard() implements Step {}
+
+    /**
+     * Selects a single element of a list. A negative index counts from the end of the list.
+     */
+    record Index(int index) implements Step {}
+
+    /**
+     * Selects a range of elements of a list, {@code [start, end)}. Negative bounds count from the end of the list
+     * and {@code null} bounds default to the start/end of the list.
+     */
+    record Slice(Integer start, Integer end) implements Step {}
+
+    /**
+     * Applies the selector to the input node and to all its descendants.
+     */
+    record RecursiveDescent(Step selector) implements Step {}
+
+    /**
+     * Selects the elements of a list that match the predicate. If the input is not a list, the input node itself
+     * is selected if it matches.
+     */
+    record Filter(FilterPredicate predicate) implements Step {}
+}
@@ -0,0 +1,293 @@
+package com.kinnovatio.utils.path;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+import com.kinnovatio.utils.ParseValue;
+import com.kinnovatio.utils.ParsedValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * A compiled path expression for selecting nodes from {@code Struct} and {@code Value} trees. This extends the
+ * plain dotted paths of {@code ParseStruct} with wildcards, list indices and slices, recursive descent and
+ * filters:
+ * <ul>
+ *     <li>{@code parent.child} - a plain dotted path. As in {@code ParseStruct}, a field step implicitly fans out
+ *     over lists, i.e. {@code readings.value} selects {@code value} from every element of {@code readings}.</li>
+ *     <li>{@code $.parent['child name']} - an optional root marker and quoted field names.</li>
+ *     <li>{@code readings[*]}, {@code parent.*} - all list elements or all struct field values.</li>
+ *     <li>{@code readings[0]}, {@code readings[-1]} - a single list element. Negative indices count from the end.</li>
+ *     <li>{@code readings[1:3]}, {@code readings[-2:]} - a list slice {@code [start, end)}.</li>
+ *     <li>{@code ..value}, {@code ..*} - recursive descent; selects the field at any depth.</li>
+ *     <li>{@code readings[?(@.quality == 'good' && @.value > 10)]} - a filter. Supports the comparison operators
+ *     {@code == != < <= > >=} against string, number, boolean and {@code null} literals, existence checks
+ *     ({@code @.quality}), {@code !}, {@code &&}, {@code ||} and parentheses. Values are coerced to the type
+ *     of the literal using the {@code ParseValue} semantics.</li>
+ * </ul>
+ *
+ * Expressions are evaluated depth-first in a single pass without building intermediate result lists. Filters are
+ * evaluated as part of the traversal, so branches that do not match are never expanded.
+ *
+ * Compiled expressions are immutable, thread-safe and cached by their expression string. The cache keeps the
+ * most recently used expressions, so a stream of one-off dynamic expressions does not evict the hot ones for
+ * good.
+ * <pre>{@code
+ * List<String> values = StructPath.compile("readings[?(@.quality == 'good')].value")
+ *         .evaluateStrings(struct);
+ * }</pre>
+ */
+public final class StructPath {
+    // Upper bound on the number of cached expressions. Protects against unbounded growth from dynamic expressions.
+    private static final int MAX_CACHE_SIZE = 1024;
+    private static final Cache<String, StructPath> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .build();
+
+    private final String expression;
+    private final Step[] steps;
+
+    private StructPath(String expression, List<Step> steps) {
+        this.expression = expression;
+        this.steps = steps.toArray(new Step[0]);
+    }
+
+    /**
+     * Compiles a path expression. Compiled expressions are cached, so repeated calls with the same expression
+     * return the same instance as long as it stays among the most recently used expressions.
+     *
+     * @param expression The path expression.
+     * @return The compiled expression.
+     * @throws IllegalArgumentException if the expression is invalid.
+     */
+    public static StructPath compile(String expression) {
+        Objects.requireNonNull(expression, "Expression cannot be null");
+        StructPath cached = cache.getIfPresent(expression);
+        if (null != cached) {
+            return cached;
+        }
+        // Parsed outside of the cache, so an invalid expression throws its IllegalArgumentException as is.
+        StructPath path = new StructPath(expression, PathParser.parse(expression));
+        cached = cache.asMap().putIfAbsent(expression, path);
+        return null == cached ? path : cached;
+    }
+
+    /**
+     * The expression string of this path.
+     * @return the expression.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Selects the nodes matching this path.
+     *
+     * @param struct The Struct to evaluate the path against.
+     * @return The matching nodes, in traversal order. If no match, then an empty list is returned.
+     */
+    public List<Value> evaluate(Struct struct) {
+        Objects.requireNonNull(struct, "Struct cannot be null.");
+        return evaluate(Values.of(struct));
+    }
+
+    /**
+     * Selects the nodes matching this path.
+     *
+     * @param value The Value to evaluate the path against.
+     * @return The matching nodes, in traversal order. If no match, then an empty list is returned.
+     */
+    public List<Value> evaluate(Value value) {
+        Objects.requireNonNull(value, "Value cannot be null.");
+        List<Value> results = new ArrayList<>();
+        walk(value, 0, new ParsedValue(), node -> {
+            results.add(node);
+            return true;
+        });
+        return results;
+    }
+
+    /**
+     * Selects the nodes matching this path and parses them to {@code String}. Follows the same rules as
+     * {@code ParseStruct.parseStringList()}: matching lists are expanded into their elements and null values
+     * are skipped.
+     *
+     * @param struct The Struct to evaluate the path against.
+     * @return The string representation of the matching nodes. If no match, then an empty list is returned.
+     */
+    public List<String> evaluateStrings(Struct struct) {
+        Objects.requireNonNull(struct, "Struct cannot be null.");
+        List<String> results = new ArrayList<>();
+        walk(Values.of(struct), 0, new ParsedValue(), node -> {
+            if (node.hasListValue()) {
+                for (Value element : node.getListValue().getValuesList()) {
+                    if (!element.hasNullValue()) {
+                        results.add(ParseValue.parseString(element));
+                    }
+                }
+            } else if (!node.hasNullValue()) {
+                results.add(ParseValue.parseString(node));
+            }
+            return true;
+        });
+        return results;
+    }
+
+    /**
+     * Returns the first node matching this path. The traversal stops at the first match.
+     *
+     * @param struct The Struct to evaluate the path against.
+     * @return The first matching node, or an empty {@code Optional} if there is no match.
+     */
+    public Optional<Value> first(Struct struct) {
+        Objects.requireNonNull(struct, "Struct cannot be null.");
+        Value[] first = new Value[1];
+        walk(Values.of(struct), 0, new ParsedValue(), node -> {
+            first[0] = node;
+            return false;
+        });
+        return Optional.ofNullable(first[0]);
+    }
+
+    /**
+     * Passes each node matching this path to the consumer, in traversal order.
+     *
+     * @param struct The Struct to evaluate the path against.
+     * @param consumer The consumer of the matching nodes.
+     */
+    public void forEach(Struct struct, Consumer<Value> consumer) {
+        Objects.requireNonNull(struct, "Struct cannot be null.");
+        Objects.requireNonNull(consumer, "Consumer cannot be null.");
+        walk(Values.of(struct), 0, new ParsedValue(), node -> {
+            consumer.accept(node);
+            return true;
+        });
+    }
+
+    /*
+    The sink of matching nodes. Returns false to stop the traversal.
+     */
+    @FunctionalInterface
+    private interface Sink {
+        boolean accept(Value node);
+    }
+
+    /*
+    Applies step [index] to the node and continues with the next step for each selected child. Returns false if
+    the traversal should stop. The scratch holder is shared by all the filter comparisons of one evaluation.
+     */
+    private boolean walk(Value node, int index, ParsedValue scratch, Sink sink) {
+        if (index == steps.length) {
+            return sink.accept(node);
+        }
+        return select(steps[index], node, index, scratch, sink);
+    }
+
+    private boolean select(Step step, Value node, int index, ParsedValue scratch, Sink sink) {
+        switch (step) {
+            case Step.Field field -> {
+                if (node.hasStructValue()) {
+                    Value child = node.getStructValue().getFieldsOrDefault(field.name(), null);
+                    return null == child || walk(child, index + 1, scratch, sink);
+                }
+                if (field.fanOut() && node.hasListValue()) {
+                    for (Value element : node.getListValue().getValuesList()) {
+                        if (!select(step, element, index, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            case Step.Wildcard wildcard -> {
+                if (node.hasStructValue()) {
+                    for (Value child : node.getStructValue().getFieldsMap().values()) {
+                        if (!walk(child, index + 1, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                } else if (node.hasListValue()) {
+                    for (Value element : node.getListValue().getValuesList()) {
+                        if (!walk(element, index + 1, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            case Step.Index position -> {
+                if (!node.hasListValue()) {
+                    return true;
+                }
+                int size = node.getListValue().getValuesCount();
+                int i = position.index() < 0 ? size + position.index() : position.index();
+                return i < 0 || i >= size || walk(node.getListValue().getValues(i), index + 1, scratch, sink);
+            }
+            case Step.Slice slice -> {
+                if (!node.hasListValue()) {
+                    return true;
+                }
+                int size = node.getListValue().getValuesCount();
+                int start = null == slice.start() ? 0 : normalize(slice.start(), size);
+                int end = null == slice.end() ? size : normalize(slice.end(), size);
+                for (int i = start; i < end; i++) {
+                    if (!walk(node.getListValue().getValues(i), index + 1, scratch, sink)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            case Step.Filter filter -> {
+                if (node.hasListValue()) {
+                    for (Value element : node.getListValue().getValuesList()) {
+                        if (filter.predicate().test(element, scratch) && !walk(element, index + 1, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+                return !filter.predicate().test(node, scratch) || walk(node, index + 1, scratch, sink);
+            }
+            case Step.RecursiveDescent descent -> {
+                if (descent.selector() instanceof Step.Filter filter) {
+                    // List elements are visited as descendants, so only test the node itself.
+                    if (!node.hasListValue() && filter.predicate().test(node, scratch) && !walk(node, index + 1, scratch, sink)) {
+                        return false;
+                    }
+                } else if (!select(descent.selector(), node, index, scratch, sink)) {
+                    return false;
+                }
+                if (node.hasStructValue()) {
+                    for (Value child : node.getStructValue().getFieldsMap().values()) {
+                        if (!select(step, child, index, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                } else if (node.hasListValue()) {
+                    for (Value element : node.getListValue().getValuesList()) {
+                        if (!select(step, element, index, scratch, sink)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    private static int normalize(int bound, int size) {
+        int normalized = bound < 0 ? size + bound : bound;
+        return Math.max(0, Math.min(size, normalized));
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
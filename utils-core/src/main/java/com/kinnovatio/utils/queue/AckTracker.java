@@ -0,0 +1,71 @@
+package com.kinnovatio.utils.queue;
+
+import java.util.ArrayDeque;
+import java.util.function.LongConsumer;
+
+/**
+ * Tracks the batches in flight in durable mode and acknowledges the contiguous prefix of completed batches.
+ *
+ * Batches may complete out of order when they are published concurrently. The log offset must never move past an
+ * unpublished item, so a completed batch is only acknowledged once all the batches registered before it have
+ * completed as well.
+ */
+final class AckTracker {
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final LongConsumer acknowledger;
+
+    /**
+     * Creates the tracker.
+     *
+     * @param acknowledger receives the end offset of the last batch in the completed prefix.
+     */
+    AckTracker(LongConsumer acknowledger) {
+        this.acknowledger = acknowledger;
+    }
+
+    /**
+     * Registers a batch. Batches must be registered in log order.
+     *
+     * @param offset the offset to acknowledge once this batch and all earlier batches have completed.
+     * @return the handle to complete.
+     */
+    synchronized Pending register(long offset) {
+        Pending batch = new Pending(offset);
+        pending.addLast(batch);
+        return batch;
+    }
+
+    /**
+     * Marks a batch as published and acknowledges the completed prefix, if any. A batch which is never completed,
+     * because it was discarded, holds back the acknowledgement of all later batches.
+     *
+     * @param batch the batch handle.
+     */
+    synchronized void complete(Pending batch) {
+        batch.completed = true;
+        long offset = -1L;
+        while (!pending.isEmpty() && pending.peekFirst().completed) {
+            offset = Math.max(offset, pending.pollFirst().offset);
+        }
+        if (offset >= 0) {
+            acknowledger.accept(offset);
+        }
+    }
+
+    /**
+     * The number of registered batches which have not been acknowledged.
+     * @return the pending batches.
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    static final class Pending {
+        private final long offset;
+        private boolean completed = false;
+
+        private Pending(long offset) {
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.kinnovatio.utils.queue;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Configures the adaptive control of a {@link PublishQueue}: the number of concurrent sink calls and the batch
+ * size are adjusted continuously based on the observed sink latency and rejections.
+ *
+ * The controller uses additive increase/multiplicative decrease (AIMD):
+ * <ul>
+ *     <li>A batch published within the target latency increases the concurrency limit by {@code 1/limit} (i.e.
+ *     roughly one per round of concurrent calls) and grows the batch size by 25%.</li>
+ *     <li>A batch published slower than the target latency reduces the limit and the batch size by 20%.</li>
+ *     <li>A {@link ThrottledException} halves the limit and the batch size. Other sink errors reduce them by 25%.</li>
+ * </ul>
+ * The concurrency limit starts at the minimum and the batch size starts at the queue's max batch size.
+ */
+@AutoValue
+public abstract class AdaptiveControl {
+    protected static final int DEFAULT_MIN_CONCURRENCY = 1;
+    protected static final int DEFAULT_MAX_CONCURRENCY = 64;
+    protected static final int DEFAULT_MIN_BATCH_SIZE = 10;
+
+    private static Builder builder() {
+        return new AutoValue_AdaptiveControl.Builder()
+                .setMinConcurrency(DEFAULT_MIN_CONCURRENCY)
+                .setMaxConcurrency(DEFAULT_MAX_CONCURRENCY)
+                .setMinBatchSize(DEFAULT_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * Adaptive control with the provided target latency per sink call. The default concurrency limits are 1 to 64
+     * and the default min batch size is 10 items.
+     *
+     * @param targetLatency the target latency of a sink call.
+     * @return the adaptive control configuration.
+     */
+    public static AdaptiveControl of(Duration targetLatency) {
+        Objects.requireNonNull(targetLatency, "Target latency cannot be null");
+        Preconditions.checkArgument(!targetLatency.isNegative() && !targetLatency.isZero(),
+                "The target latency must be positive");
+        return AdaptiveControl.builder()
+                .setTargetLatency(targetLatency)
+                .build();
+    }
+
+    abstract Builder toBuilder();
+
+    /**
+     * The target latency of a sink call.
+     * @return the target latency.
+     */
+    public abstract Duration getTargetLatency();
+
+    /**
+     * The lower bound of the concurrency limit.
+     * @return the min concurrency.
+     */
+    public abstract int getMinConcurrency();
+
+    /**
+     * The upper bound of the concurrency limit.
+     * @return the max concurrency.
+     */
+    public abstract int getMaxConcurrency();
+
+    /**
+     * The lower bound of the batch size. The upper bound is the max batch size of the queue.
+     * @return the min batch size.
+     */
+    public abstract int getMinBatchSize();
+
+    /**
+     * Sets the bounds of the concurrency limit.
+     *
+     * @param minConcurrency The min number of concurrent sink calls.
+     * @param maxConcurrency The max number of concurrent sink calls.
+     * @return The {@link AdaptiveControl} with the concurrency limits configured.
+     */
+    public AdaptiveControl withConcurrencyLimits(int minConcurrency, int maxConcurrency) {
+        Preconditions.checkArgument(minConcurrency > 0 && maxConcurrency >= minConcurrency,
+                "The concurrency limits must be positive, and max must be greater than or equal to min");
+        return toBuilder()
+                .setMinConcurrency(minConcurrency)
+                .setMaxConcurrency(maxConcurrency)
+                .build();
+    }
+
+    /**
+     * Sets the lower bound of the batch size.
+     *
+     * @param minBatchSize The min batch size.
+     * @return The {@link AdaptiveControl} with the min batch size configured.
+     */
+    public AdaptiveControl withMinBatchSize(int minBatchSize) {
+        Preconditions.checkArgument(minBatchSize > 0, "The min batch size must be positive");
+        return toBuilder().setMinBatchSize(minBatchSize).build();
+    }
+
+    @AutoValue.Builder
+    abstract static class Builder {
+        abstract Builder setTargetLatency(Duration value);
+        abstract Builder setMinConcurrency(int value);
+        abstract Builder setMaxConcurrency(int value);
+        abstract Builder setMinBatchSize(int value);
+
+        abstract AdaptiveControl build();
+    }
+}
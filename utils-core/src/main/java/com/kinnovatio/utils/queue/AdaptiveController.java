@@ -0,0 +1,167 @@
+package com.kinnovatio.utils.queue;
+
+/**
+ * Limits the number of concurrent sink calls of a {@link PublishQueue} and tracks the current batch size.
+ *
+ * In adaptive mode the concurrency limit and the batch size follow the AIMD rules described in
+ * {@link AdaptiveControl}. In fixed mode they stay at their initial values.
+ *
+ * The batch size is read by the consumer thread for every item, so it is published via a volatile field. All
+ * other state is guarded by the controller's monitor.
+ */
+final class AdaptiveController {
+    private static final double SLOW_DECREASE = 0.8;
+    private static final double ERROR_DECREASE = 0.75;
+    private static final double THROTTLE_DECREASE = 0.5;
+    private static final double BATCH_INCREASE = 1.25;
+
+    private final boolean adaptive;
+    private final long targetLatencyNanos;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+
+    private double limit;
+    private double batchSize;
+    private int inFlight = 0;
+    private volatile int currentBatchSize;
+
+    private AdaptiveController(boolean adaptive, long targetLatencyNanos, int minLimit, int maxLimit,
+                               int minBatchSize, int maxBatchSize, int initialLimit) {
+        this.adaptive = adaptive;
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.minBatchSize = Math.min(minBatchSize, maxBatchSize);
+        this.maxBatchSize = maxBatchSize;
+        this.limit = initialLimit;
+        this.batchSize = maxBatchSize;
+        this.currentBatchSize = maxBatchSize;
+    }
+
+    /**
+     * A controller with a fixed concurrency limit and batch size.
+     */
+    static AdaptiveController fixed(int concurrency, int batchSize) {
+        return new AdaptiveController(false, Long.MAX_VALUE, concurrency, concurrency,
+                batchSize, batchSize, concurrency);
+    }
+
+    /**
+     * An adaptive controller. The limit starts at the min concurrency and the batch size at the max batch size.
+     */
+    static AdaptiveController adaptive(AdaptiveControl control, int maxBatchSize) {
+        return new AdaptiveController(true, control.getTargetLatency().toNanos(), control.getMinConcurrency(),
+                control.getMaxConcurrency(), control.getMinBatchSize(), maxBatchSize, control.getMinConcurrency());
+    }
+
+    /**
+     * Blocks until a sink call may start. Interrupts are deferred until the call has been admitted, so that a
+     * batch is never lost on an interrupt.
+     */
+    synchronized void acquire() {
+        boolean interrupted = false;
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        inFlight++;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Signals that a sink call has completed, including its retries.
+     */
+    synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Blocks until all sink calls have completed.
+     */
+    synchronized void awaitIdle() throws InterruptedException {
+        while (inFlight > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Records a successful sink call.
+     *
+     * @param latencyNanos the latency of the call.
+     */
+    synchronized void onSuccess(long latencyNanos) {
+        if (!adaptive) {
+            return;
+        }
+        if (latencyNanos <= targetLatencyNanos) {
+            // Only raise the limit when it is actually being used, so that it does not grow without evidence.
+            if (inFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            setBatchSize(Math.max(batchSize * BATCH_INCREASE, batchSize + 1));
+        } else {
+            decrease(SLOW_DECREASE);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Records a sink call rejected by the downstream system because of rate limiting or overload.
+     */
+    synchronized void onThrottled() {
+        if (adaptive) {
+            decrease(THROTTLE_DECREASE);
+        }
+    }
+
+    /**
+     * Records a failed sink call.
+     */
+    synchronized void onError() {
+        if (adaptive) {
+            decrease(ERROR_DECREASE);
+        }
+    }
+
+    /**
+     * The current batch size.
+     * @return the batch size.
+     */
+    int getBatchSize() {
+        return currentBatchSize;
+    }
+
+    /**
+     * The current concurrency limit.
+     * @return the concurrency limit.
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * The number of sink calls in flight.
+     * @return the in-flight calls.
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    private void decrease(double factor) {
+        limit = Math.max(minLimit, limit * factor);
+        setBatchSize(batchSize * factor);
+    }
+
+    private void setBatchSize(double size) {
+        batchSize = Math.clamp(size, minBatchSize, maxBatchSize);
+        currentBatchSize = (int) batchSize;
+    }
+}
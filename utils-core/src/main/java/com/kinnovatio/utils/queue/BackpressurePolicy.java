@@ -0,0 +1,13 @@
+package com.kinnovatio.utils.queue;
+
+/**
+ * Specifies how {@link PublishQueue#put(Object)} behaves when the queue is full.
+ */
+public enum BackpressurePolicy {
+    /** Wait until there is room in the queue. */
+    BLOCK,
+    /** Discard the item and return {@code false}. */
+    DROP,
+    /** Throw an {@code IllegalStateException}. */
+    FAIL
+}
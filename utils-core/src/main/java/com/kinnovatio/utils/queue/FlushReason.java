@@ -0,0 +1,15 @@
+package com.kinnovatio.utils.queue;
+
+/**
+ * The reason why a {@link PublishQueue} flushed a batch to its sink.
+ */
+public enum FlushReason {
+    /** The batch reached the max batch size (number of items). */
+    SIZE,
+    /** The batch reached the max batch bytes. */
+    BYTES,
+    /** The oldest item in the batch reached the max linger time. */
+    TIME,
+    /** The queue is stopping and flushed the remaining items. */
+    SHUTDOWN
+}
@@ -0,0 +1,77 @@
+package com.kinnovatio.utils.queue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes items to and from the durable storage of a {@link PublishQueue}.
+ *
+ * @param <T> the item type.
+ */
+public interface ItemCodec<T> {
+
+    /**
+     * Serializes an item.
+     *
+     * @param item the item to serialize.
+     * @return the serialized item.
+     */
+    byte[] encode(T item);
+
+    /**
+     * Deserializes an item. The buffer is a read-only view of the stored bytes, positioned at the start of the
+     * item and limited to its end. It is only valid for the duration of the call.
+     *
+     * @param buffer the serialized item.
+     * @return the item.
+     */
+    T decode(ByteBuffer buffer);
+
+    /**
+     * A codec for {@code String} items, stored as UTF-8.
+     *
+     * @return the codec.
+     */
+    static ItemCodec<String> utf8() {
+        return new ItemCodec<>() {
+            @Override
+            public byte[] encode(String item) {
+                return item.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(ByteBuffer buffer) {
+                return StandardCharsets.UTF_8.decode(buffer).toString();
+            }
+        };
+    }
+
+    /**
+     * A codec for protobuf messages, stored in the protobuf binary format.
+     *
+     * @param parser the parser of the message type. Ex: {@code Struct.parser()}
+     * @param <M> the message type.
+     * @return the codec.
+     */
+    static <M extends MessageLite> ItemCodec<M> protobuf(Parser<M> parser) {
+        return new ItemCodec<>() {
+            @Override
+            public byte[] encode(M item) {
+                return item.toByteArray();
+            }
+
+            @Override
+            public M decode(ByteBuffer buffer) {
+                try {
+                    return parser.parseFrom(buffer);
+                } catch (InvalidProtocolBufferException e) {
+                    throw new IllegalStateException("Unable to decode a stored item.", e);
+                }
+            }
+        };
+    }
+}
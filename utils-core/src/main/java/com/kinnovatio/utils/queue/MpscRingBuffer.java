@@ -0,0 +1,122 @@
+package com.kinnovatio.utils.queue;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer/single-consumer ring buffer.
+ *
+ * Each slot carries a sequence number (after Dmitry Vyukov's bounded queue). A producer claims a slot by a CAS on
+ * the tail counter, writes the item and publishes it by advancing the slot sequence. The single consumer reads
+ * slots in order and releases them by advancing the sequence by one lap. There are no locks and no per-item
+ * allocations.
+ *
+ * {@link #offer(Object)} may be called from any thread. {@link #poll()} and {@link #drainTo(List, int)} must only
+ * be called from the consumer thread.
+ */
+final class MpscRingBuffer<E> {
+    private final int capacity;
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates a ring buffer.
+     *
+     * @param requestedCapacity the minimum capacity. Rounded up to the closest power of two.
+     */
+    MpscRingBuffer(int requestedCapacity) {
+        capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        mask = capacity - 1;
+        buffer = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.setPlain(i, i);
+        }
+    }
+
+    /**
+     * Adds an item to the buffer.
+     *
+     * @param item the item to add.
+     * @return {@code true} if the item was added, {@code false} if the buffer is full.
+     */
+    boolean offer(E item) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) position & mask;
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.weakCompareAndSetVolatile(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot has not been released by the consumer yet: the buffer is full.
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        buffer[index] = item;
+        sequences.setRelease(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the next item. Consumer thread only.
+     *
+     * @return the next item, or {@code null} if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long position = head.getPlain();
+        int index = (int) position & mask;
+        if (sequences.getAcquire(index) != position + 1) {
+            return null;
+        }
+        E item = (E) buffer[index];
+        buffer[index] = null;
+        sequences.setRelease(index, position + capacity);
+        head.setRelease(position + 1);
+        return item;
+    }
+
+    /**
+     * Moves up to {@code maxItems} items into the target list. Consumer thread only.
+     *
+     * @param target the list to add the items to.
+     * @param maxItems the maximum number of items to move.
+     * @return the number of items moved.
+     */
+    int drainTo(List<? super E> target, int maxItems) {
+        int count = 0;
+        E item;
+        while (count < maxItems && null != (item = poll())) {
+            target.add(item);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The approximate number of items in the buffer.
+     * @return the number of items.
+     */
+    int size() {
+        long size = tail.get() - head.getAcquire();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
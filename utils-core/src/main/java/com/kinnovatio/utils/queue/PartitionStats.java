@@ -0,0 +1,48 @@
+package com.kinnovatio.utils.queue;
+
+import java.util.List;
+
+/**
+ * A snapshot of the load on the lanes of a partitioned {@link PublishQueue}, for spotting hot partitions.
+ *
+ * @param laneItems the number of items routed to each lane since the queue started.
+ * @param laneBacklogs the number of batches waiting to be published in each lane.
+ */
+public record PartitionStats(List<Long> laneItems, List<Integer> laneBacklogs) {
+
+    public PartitionStats {
+        laneItems = List.copyOf(laneItems);
+        laneBacklogs = List.copyOf(laneBacklogs);
+    }
+
+    /**
+     * The ratio between the item count of the busiest lane and the mean item count per lane. A value of 1.0 means
+     * the items are evenly spread; a value close to the lane count means a single lane receives almost all items.
+     *
+     * @return the skew, or 1.0 if no items have been routed.
+     */
+    public double skew() {
+        long total = 0L;
+        long max = 0L;
+        for (long items : laneItems) {
+            total += items;
+            max = Math.max(max, items);
+        }
+        return total == 0L ? 1.0 : (double) max * laneItems.size() / total;
+    }
+
+    /**
+     * The index of the lane which has received the most items.
+     *
+     * @return the busiest lane.
+     */
+    public int hottestLane() {
+        int hottest = 0;
+        for (int i = 1; i < laneItems.size(); i++) {
+            if (laneItems.get(i) > laneItems.get(hottest)) {
+                hottest = i;
+            }
+        }
+        return hottest;
+    }
+}
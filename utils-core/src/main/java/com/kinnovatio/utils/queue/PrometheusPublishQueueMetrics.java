@@ -0,0 +1,187 @@
+package com.kinnovatio.utils.queue;
+
+import com.google.common.base.Preconditions;
+import io.prometheus.metrics.core.metrics.CounterWithCallback;
+import io.prometheus.metrics.core.metrics.GaugeWithCallback;
+import io.prometheus.metrics.core.metrics.Histogram;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.Unit;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Exports the metrics of a {@link PublishQueue} to a Prometheus registry. Requires
+ * {@code io.prometheus:prometheus-metrics-core} on the classpath (an optional dependency of this library).
+ *
+ * The metrics are labelled by queue name, so several queues can share a registry. Counters are exposed with the
+ * {@code _total} suffix:
+ * <ul>
+ *     <li>{@code publish_queue_depth}: the number of items waiting in the queue.</li>
+ *     <li>{@code publish_queue_items_enqueued_total}, {@code _dropped_total}, {@code _filtered_total},
+ *     {@code _published_total} and {@code _discarded_total}: item counters.</li>
+ *     <li>{@code publish_queue_flushes_total}: batches flushed, by reason.</li>
+ *     <li>{@code publish_queue_sink_retries_total} and {@code publish_queue_sink_throttled_total}: retried and
+ *     throttled sink calls.</li>
+ *     <li>{@code publish_queue_batch_size} and {@code publish_queue_sink_latency_seconds}: histograms of the
+ *     published batches.</li>
+ * </ul>
+ *
+ * The metrics of a queue stay in the registry after the queue has stopped, so the final values can still be
+ * scraped or pushed. Close the hook when the queue is no longer needed to remove its metrics, so that the registry
+ * does not keep the queue alive.
+ * <pre>{@code
+ * PrometheusPublishQueueMetrics metrics = PrometheusPublishQueueMetrics.of(registry, "datapoints");
+ * try (metrics; PublishQueue<Datapoint> queue = PublishQueue.of(client::upsert).withMetrics(metrics)) {
+ *     queue.start();
+ *     datapoints.forEach(queue::put);
+ * }
+ * }</pre>
+ */
+public final class PrometheusPublishQueueMetrics implements PublishQueueMetrics, AutoCloseable {
+    private static final Map<PrometheusRegistry, Families> FAMILIES = new WeakHashMap<>();
+
+    private final Families families;
+    private final String queueName;
+    private volatile PublishQueueStats boundStats;
+
+    private PrometheusPublishQueueMetrics(Families families, String queueName) {
+        this.families = families;
+        this.queueName = queueName;
+    }
+
+    /**
+     * Exports the queue metrics to the default registry.
+     *
+     * @param queueName the value of the {@code queue} label.
+     * @return the metrics hook.
+     */
+    public static PrometheusPublishQueueMetrics of(String queueName) {
+        return of(PrometheusRegistry.defaultRegistry, queueName);
+    }
+
+    /**
+     * Exports the queue metrics to a registry. The metric families are registered once per registry.
+     *
+     * @param registry the registry to register the metrics with.
+     * @param queueName the value of the {@code queue} label.
+     * @return the metrics hook.
+     */
+    public static PrometheusPublishQueueMetrics of(PrometheusRegistry registry, String queueName) {
+        Objects.requireNonNull(registry, "Registry cannot be null");
+        Objects.requireNonNull(queueName, "Queue name cannot be null");
+        Preconditions.checkArgument(!queueName.isBlank(), "The queue name cannot be blank");
+        Families families;
+        synchronized (FAMILIES) {
+            families = FAMILIES.computeIfAbsent(registry, Families::new);
+        }
+        return new PrometheusPublishQueueMetrics(families, queueName);
+    }
+
+    /**
+     * Binds the stats of a queue to the metrics. A queue started later with the same name replaces it.
+     *
+     * @param stats the queue's counters.
+     */
+    @Override
+    public void bind(PublishQueueStats stats) {
+        boundStats = stats;
+        families.queues.put(queueName, stats);
+    }
+
+    /**
+     * Removes the metrics of the bound queue from the registry. A queue with the same name which was bound by
+     * another hook is not affected. Closing the hook has no effect on the queue itself.
+     */
+    @Override
+    public void close() {
+        PublishQueueStats stats = boundStats;
+        if (null != stats && families.queues.remove(queueName, stats)) {
+            families.batchSize.remove(queueName);
+            families.sinkLatency.remove(queueName);
+        }
+        boundStats = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordBatch(FlushReason reason, int batchSize, long sinkLatencyNanos) {
+        families.batchSize.labelValues(queueName).observe(batchSize);
+        families.sinkLatency.labelValues(queueName).observe(Unit.nanosToSeconds(sinkLatencyNanos));
+    }
+
+    /*
+    The metric families of a registry, shared by all queues exporting to it. The callback metrics read the stats
+    of the bound queues on each scrape.
+     */
+    private static final class Families {
+        private final Map<String, PublishQueueStats> queues = new ConcurrentHashMap<>();
+        private final Histogram batchSize;
+        private final Histogram sinkLatency;
+
+        private Families(PrometheusRegistry registry) {
+            GaugeWithCallback.builder()
+                    .name("publish_queue_depth")
+                    .help("The number of items waiting in the publish queue")
+                    .labelNames("queue")
+                    .callback(callback -> queues.forEach((name, stats) ->
+                            callback.call(stats.getQueueDepth(), name)))
+                    .register(registry);
+            registerCounter(registry, "publish_queue_items_enqueued",
+                    "Items added to the publish queue", PublishQueueStats::getEnqueuedItems);
+            registerCounter(registry, "publish_queue_items_dropped",
+                    "Items dropped because the publish queue was full", PublishQueueStats::getDroppedItems);
+            registerCounter(registry, "publish_queue_items_filtered",
+                    "Items skipped because they were inside the state store state",
+                    PublishQueueStats::getFilteredItems);
+            registerCounter(registry, "publish_queue_items_published",
+                    "Items published to the sink", PublishQueueStats::getPublishedItems);
+            registerCounter(registry, "publish_queue_items_discarded",
+                    "Items discarded after the sink failed to publish them", PublishQueueStats::getDiscardedItems);
+            registerCounter(registry, "publish_queue_sink_retries",
+                    "Retried sink calls", PublishQueueStats::getRetries);
+            registerCounter(registry, "publish_queue_sink_throttled",
+                    "Sink calls rejected by throttling", PublishQueueStats::getThrottledCalls);
+            CounterWithCallback.builder()
+                    .name("publish_queue_flushes")
+                    .help("Batches flushed from the publish queue, by flush reason")
+                    .labelNames("queue", "reason")
+                    .callback(callback -> queues.forEach((name, stats) -> {
+                        for (FlushReason reason : FlushReason.values()) {
+                            callback.call(stats.getFlushes(reason), name, reason.name().toLowerCase(Locale.ROOT));
+                        }
+                    }))
+                    .register(registry);
+
+            batchSize = Histogram.builder()
+                    .name("publish_queue_batch_size")
+                    .help("The number of items per published batch")
+                    .labelNames("queue")
+                    .classicUpperBounds(1, 10, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000)
+                    .register(registry);
+            sinkLatency = Histogram.builder()
+                    .name("publish_queue_sink_latency_seconds")
+                    .help("The latency of successful sink calls")
+                    .unit(Unit.SECONDS)
+                    .labelNames("queue")
+                    .register(registry);
+        }
+
+        private void registerCounter(PrometheusRegistry registry, String name, String help,
+                                     ToLongFunction<PublishQueueStats> value) {
+            CounterWithCallback.builder()
+                    .name(name)
+                    .help(help)
+                    .labelNames("queue")
+                    .callback(callback -> queues.forEach((queue, stats) ->
+                            callback.call(value.applyAsLong(stats), queue)))
+                    .register(registry);
+        }
+    }
+}
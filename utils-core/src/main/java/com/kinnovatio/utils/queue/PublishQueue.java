@@ -1,5 +1,1154 @@
 package com.kinnovatio.utils.queue;
 
-public class PublishQueue {
-    
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+import com.kinnovatio.utils.statestore.StateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A high-throughput queue for publishing items in batches to a {@link PublishSink}.
+ * <p>
+ * Any number of producer threads add items via {@link #put(Object)}. The items are buffered in a bounded,
+ * lock-free ring buffer and a single background consumer thread collects them into batches. A batch is flushed
+ * to the sink when it reaches the max batch size, the max batch bytes or when its oldest item has waited for the
+ * max linger time. When the queue is full, producers are handled according to the {@link BackpressurePolicy}.
+ * <p>
+ * Call {@link #start()} to start the background consumer thread and {@link #stop()} (or {@link #close()}) to flush
+ * the remaining items and stop the thread.
+ * <p>
+ * By default, items are only buffered in memory. Use {@link #withDurableStorage(Path, ItemCodec)} to also persist
+ * the items to disk, so that items which have not been published are replayed after a restart.
+ * <p>
+ * By default, batches are published one at a time from the consumer thread. Use {@link #withMaxConcurrency(int)}
+ * to publish several batches concurrently on virtual threads, or {@link #withAdaptiveControl(AdaptiveControl)} to
+ * adjust the concurrency and batch size to the observed sink latency and rejections. Failed batches are retried
+ * according to the {@link RetryPolicy}.
+ * <p>
+ * Use {@link #withPartitioning(Function, int)} to publish items with the same key in order while publishing
+ * different keys concurrently.
+ * <p>
+ * Use {@link #withStateStore(StateStore, Function, ToLongFunction)} to skip items which have already been
+ * published, for example by a previous run, based on the watermarks of a {@link StateStore}.
+ * <p>
+ * The queue keeps live counters in {@link #getStats()}, and {@link #withMetrics(PublishQueueMetrics)} exports
+ * them, for example to Prometheus via {@link PrometheusPublishQueueMetrics}.
+ * <pre>{@code
+ * try (PublishQueue<Datapoint> queue = PublishQueue.of(client::upsert)
+ *         .withMaxBatchSize(5_000)
+ *         .withMaxLinger(Duration.ofMillis(200))) {
+ *     queue.start();
+ *     datapoints.forEach(queue::put);
+ * }
+ * }</pre>
+ *
+ * @param <T> the item type.
+ */
+@AutoValue
+public abstract class PublishQueue<T> implements Closeable {
+    protected static final int DEFAULT_CAPACITY = 65_536;
+    protected static final int MAX_CAPACITY = 1 << 30;
+    protected static final int DEFAULT_MAX_BATCH_SIZE = 1_000;
+    protected static final long DEFAULT_MAX_BATCH_BYTES = 4L * 1024 * 1024;
+    protected static final Duration DEFAULT_MAX_LINGER = Duration.ofMillis(100L);
+    protected static final Duration MIN_MAX_LINGER = Duration.ofMillis(1L);
+    protected static final Duration MAX_MAX_LINGER = Duration.ofMinutes(10L);
+    protected static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    protected static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    protected static final int DEFAULT_MAX_CONCURRENCY = 1;
+    protected static final int MAX_LANES = 4_096;
+
+    // The number of batches which can be handed over to each lane's worker. Further batches wait in the lane's
+    // overflow, which is drained by the consumer thread.
+    private static final int LANE_BACKLOG_CAPACITY = 4;
+
+    // How often a lane hand-off on shutdown checks whether the lane worker is still alive.
+    private static final long LANE_HAND_OFF_POLL_MILLIS = 10L;
+
+    // Producers waiting for room in the queue back off exponentially up to this interval.
+    private static final long MAX_PRODUCER_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    protected final Logger LOG = LoggerFactory.getLogger(this.getClass());
+
+    private final Object lifecycleLock = new Object();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile MpscRingBuffer<Object> ringBuffer;
+    private volatile SegmentLog segmentLog;
+    private volatile Thread consumerThread;
+    private volatile boolean consumerWaiting = false;
+    private volatile boolean stopping = false;
+    private volatile AdaptiveController controller;
+    private volatile AckTracker ackTracker;
+    private ExecutorService executor;
+    private volatile Lane<T>[] lanes;
+    private final PublishQueueStats stats = new PublishQueueStats(() -> {
+        MpscRingBuffer<Object> buffer = ringBuffer;
+        return null == buffer ? 0 : buffer.size();
+    });
+
+    // The log end offset of the last item taken by the consumer thread. Only accessed by the consumer thread.
+    private long lastEndOffset = -1L;
+
+    // The lanes with batches in their overflow, and the max number of overflow items per lane before the consumer
+    // thread stops taking new items. Only accessed by the consumer thread.
+    private final List<Lane<T>> overflowingLanes = new ArrayList<>();
+    private int maxLaneOverflowItems;
+
+    private static <T> Builder<T> builder() {
+        return new AutoValue_PublishQueue.Builder<T>()
+                .setCapacity(DEFAULT_CAPACITY)
+                .setMaxBatchSize(DEFAULT_MAX_BATCH_SIZE)
+                .setMaxBatchBytes(DEFAULT_MAX_BATCH_BYTES)
+                .setItemSizer(item -> 0L)
+                .setMaxLinger(DEFAULT_MAX_LINGER)
+                .setBackpressurePolicy(BackpressurePolicy.BLOCK)
+                .setSegmentBytes(DEFAULT_SEGMENT_BYTES)
+                .setMaxConcurrency(DEFAULT_MAX_CONCURRENCY)
+                .setRetryPolicy(RetryPolicy.none())
+                .setLaneCount(1);
+    }
+
+    /**
+     * Initialize a publish queue which publishes to the provided sink.
+     *
+     * @param sink the sink to publish batches to.
+     * @param <T> the item type.
+     * @return the publish queue.
+     */
+    public static <T> PublishQueue<T> of(PublishSink<T> sink) {
+        Objects.requireNonNull(sink, "Sink cannot be null");
+        return PublishQueue.<T>builder()
+                .setSink(sink)
+                .build();
+    }
+
+    abstract Builder<T> toBuilder();
+
+    abstract PublishSink<T> getSink();
+    abstract int getCapacity();
+    abstract int getMaxBatchSize();
+    abstract long getMaxBatchBytes();
+    abstract ToLongFunction<T> getItemSizer();
+    abstract Duration getMaxLinger();
+    abstract BackpressurePolicy getBackpressurePolicy();
+    abstract Optional<Path> getStorageDirectory();
+    abstract Optional<ItemCodec<T>> getItemCodec();
+    abstract int getSegmentBytes();
+    abstract int getMaxConcurrency();
+    abstract Optional<AdaptiveControl> getAdaptiveControl();
+    abstract RetryPolicy getRetryPolicy();
+    abstract Optional<Function<T, ?>> getKeyFunction();
+    abstract int getLaneCount();
+    abstract Optional<StateFilter<T>> getStateFilter();
+    abstract Optional<PublishQueueMetrics> getMetrics();
+
+    /**
+     * Sets the capacity of the queue, i.e. the max number of items buffered before producers are subject to the
+     * backpressure policy. The capacity is rounded up to the closest power of two.
+     *
+     * The default capacity is 65 536 items.
+     * @param capacity The queue capacity.
+     * @return The {@link PublishQueue} with the capacity configured.
+     */
+    public PublishQueue<T> withCapacity(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= MAX_CAPACITY,
+                String.format("The capacity must be between 1 and %d", MAX_CAPACITY));
+        return toBuilder().setCapacity(capacity).build();
+    }
+
+    /**
+     * Sets the max number of items per batch.
+     *
+     * The default max batch size is 1 000 items.
+     * @param maxBatchSize The max batch size.
+     * @return The {@link PublishQueue} with the max batch size configured.
+     */
+    public PublishQueue<T> withMaxBatchSize(int maxBatchSize) {
+        Preconditions.checkArgument(maxBatchSize > 0, "The max batch size must be positive");
+        return toBuilder().setMaxBatchSize(maxBatchSize).build();
+    }
+
+    /**
+     * Sets the max size of a batch in bytes, as estimated by the item sizer. A batch is flushed as soon as its
+     * estimated size reaches the max batch bytes.
+     *
+     * The default max batch bytes is 4 MiB. The byte limit has no effect unless an item sizer is provided.
+     * @param maxBatchBytes The max batch size in bytes.
+     * @param itemSizer A function estimating the size of an item in bytes.
+     * @return The {@link PublishQueue} with the max batch bytes configured.
+     */
+    public PublishQueue<T> withMaxBatchBytes(long maxBatchBytes, ToLongFunction<T> itemSizer) {
+        Preconditions.checkArgument(maxBatchBytes > 0, "The max batch bytes must be positive");
+        Objects.requireNonNull(itemSizer, "Item sizer cannot be null");
+        return toBuilder()
+                .setMaxBatchBytes(maxBatchBytes)
+                .setItemSizer(itemSizer)
+                .build();
+    }
+
+    /**
+     * Sets the max linger time, i.e. how long the oldest item of a batch may wait before the batch is flushed.
+     *
+     * The default max linger time is 100 milliseconds.
+     * @param maxLinger The max linger time.
+     * @return The {@link PublishQueue} with the max linger time configured.
+     */
+    public PublishQueue<T> withMaxLinger(Duration maxLinger) {
+        Preconditions.checkArgument(maxLinger.compareTo(MAX_MAX_LINGER) <= 0
+                        && maxLinger.compareTo(MIN_MAX_LINGER) >= 0,
+                String.format("The max linger time can be minimum %s and maximum %s",
+                        MIN_MAX_LINGER, MAX_MAX_LINGER));
+        return toBuilder().setMaxLinger(maxLinger).build();
+    }
+
+    /**
+     * Sets the backpressure policy, i.e. how {@link #put(Object)} behaves when the queue is full.
+     *
+     * The default policy is {@link BackpressurePolicy#BLOCK}.
+     * @param policy The backpressure policy.
+     * @return The {@link PublishQueue} with the backpressure policy configured.
+     */
+    public PublishQueue<T> withBackpressurePolicy(BackpressurePolicy policy) {
+        Objects.requireNonNull(policy, "Policy cannot be null");
+        return toBuilder().setBackpressurePolicy(policy).build();
+    }
+
+    /**
+     * Enables durable storage. Items are appended to memory-mapped, rolling segment files in the directory before
+     * they are added to the in-memory queue. When a batch has been published, the consumer offset is persisted
+     * and segments which only hold published items are deleted. On {@link #start()}, the items which were stored
+     * but not published by a previous run (for example because the process was killed) are replayed before
+     * any new items.
+     *
+     * Only one queue may use a storage directory at a time; the directory is locked while the queue is open.
+     * Each item is copied once when it is stored: {@link ItemCodec#encode(Object)} returns a byte array which is
+     * copied into the mapped segment. Replayed items are decoded directly from the mapped segment.
+     *
+     * The consumer offset only advances past a batch once the batch and all earlier batches have been published.
+     * A batch which the sink fails to publish (after any retries) is logged and left in the log, so it is
+     * replayed on the next start. Until then, the offset cannot advance past it: the later batches are published
+     * as usual, but they are kept in the log and published again after the restart (at-least-once delivery).
+     *
+     * @param directory The directory to store the segment files in. Created if it does not exist.
+     * @param codec The codec for serializing the items.
+     * @return The {@link PublishQueue} with durable storage configured.
+     */
+    public PublishQueue<T> withDurableStorage(Path directory, ItemCodec<T> codec) {
+        Objects.requireNonNull(directory, "Directory cannot be null");
+        Objects.requireNonNull(codec, "Codec cannot be null");
+        return toBuilder()
+                .setStorageDirectory(directory)
+                .setItemCodec(codec)
+                .build();
+    }
+
+    /**
+     * Sets the size of each segment file of the durable storage.
+     *
+     * The default segment size is 64 MiB.
+     * @param segmentBytes The segment size in bytes. Minimum 64 KiB.
+     * @return The {@link PublishQueue} with the segment size configured.
+     */
+    public PublishQueue<T> withSegmentBytes(int segmentBytes) {
+        Preconditions.checkArgument(segmentBytes >= MIN_SEGMENT_BYTES,
+                String.format("The segment size must be at least %d bytes", MIN_SEGMENT_BYTES));
+        return toBuilder().setSegmentBytes(segmentBytes).build();
+    }
+
+    /**
+     * Sets the max number of concurrent sink calls. With a max concurrency above one, batches are published on
+     * virtual threads and may complete out of order. Has no effect when adaptive control is enabled.
+     *
+     * The default max concurrency is 1, i.e. batches are published sequentially from the consumer thread.
+     * @param maxConcurrency The max number of concurrent sink calls.
+     * @return The {@link PublishQueue} with the max concurrency configured.
+     */
+    public PublishQueue<T> withMaxConcurrency(int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "The max concurrency must be positive");
+        return toBuilder().setMaxConcurrency(maxConcurrency).build();
+    }
+
+    /**
+     * Enables adaptive control of the number of concurrent sink calls and the batch size, based on the observed
+     * sink latency, errors and {@link ThrottledException rejections}. Batches are published on virtual threads.
+     * The max batch size and max batch bytes remain upper bounds for the batches.
+     *
+     * @param control The adaptive control configuration.
+     * @return The {@link PublishQueue} with adaptive control configured.
+     * @see AdaptiveControl
+     */
+    public PublishQueue<T> withAdaptiveControl(AdaptiveControl control) {
+        Objects.requireNonNull(control, "Adaptive control cannot be null");
+        return toBuilder().setAdaptiveControl(control).build();
+    }
+
+    /**
+     * Sets the retry policy for batches which the sink fails to publish. A batch which still fails after the last
+     * retry is logged and discarded.
+     *
+     * The backoff between retries is spent on the thread publishing the batch. With the default max concurrency
+     * of one, that is the consumer thread, so no new batches are collected while a batch backs off: the queue
+     * fills up and producers are subject to the backpressure policy. This keeps the batches in order. Use
+     * {@link #withMaxConcurrency(int)} or {@link #withAdaptiveControl(AdaptiveControl)} to back off on virtual
+     * threads instead, and keep collecting batches. In a partitioned queue, the backoff only holds up its lane.
+     *
+     * The default policy is {@link RetryPolicy#none()}.
+     * @param policy The retry policy.
+     * @return The {@link PublishQueue} with the retry policy configured.
+     */
+    public PublishQueue<T> withRetryPolicy(RetryPolicy policy) {
+        Objects.requireNonNull(policy, "Retry policy cannot be null");
+        return toBuilder().setRetryPolicy(policy).build();
+    }
+
+    /**
+     * Partitions the items into ordered lanes by key. Items with the same key are always routed to the same lane,
+     * and each lane publishes its batches one at a time, in order, on its own virtual thread. The lanes publish
+     * concurrently, subject to the concurrency limit of the adaptive control, if enabled. {@link
+     * #withMaxConcurrency(int)} has no effect on a partitioned queue.
+     *
+     * Each lane collects its own batches, so the max batch size, max batch bytes and max linger time apply per
+     * lane. Use {@link #getPartitionStats()} to monitor the spread of items across the lanes.
+     *
+     * A slow lane does not hold up the other lanes until its waiting batches hold its share of the queue capacity
+     * (at least one max batch size of items). Then the consumer thread stops taking new items until the lane has
+     * caught up, so the queue fills up and producers are subject to the backpressure policy.
+     *
+     * @param keyFunction A function extracting the partition key of an item. Must not throw. Items with a
+     *                    {@code null} key are routed to lane 0.
+     * @param laneCount The number of lanes.
+     * @return The {@link PublishQueue} with partitioning configured.
+     */
+    public PublishQueue<T> withPartitioning(Function<T, ?> keyFunction, int laneCount) {
+        Objects.requireNonNull(keyFunction, "Key function cannot be null");
+        Preconditions.checkArgument(laneCount > 0 && laneCount <= MAX_LANES,
+                String.format("The lane count must be between 1 and %d", MAX_LANES));
+        return toBuilder()
+                .setKeyFunction(keyFunction)
+                .setLaneCount(laneCount)
+                .build();
+    }
+
+    /**
+     * Connects the queue to a {@link StateStore} to avoid re-publishing items. Items which are inside the stored
+     * watermark interval of their key (see {@link StateStore#isOutsideState(String, long)}) are skipped by
+     * {@link #put(Object)}. When the sink has published a batch, the low and high watermarks of the keys in the
+     * batch are expanded to cover it, so the state only advances for published items.
+     *
+     * The state of a key is a single interval without gaps. The watermarks of a key therefore only advance over
+     * its batches up to the first batch which has not been published yet: a discarded batch holds back the state
+     * of its keys for the rest of the run, so its items and the later items of those keys are not skipped by the
+     * next run. For this to hold, the items of a key must be put in watermark order (increasing or decreasing),
+     * by one producer at a time.
+     *
+     * The state store should be loaded before the queue is started. Committing the state store is left to the
+     * caller, for example via the state store's background thread.
+     *
+     * @param stateStore The state store holding the watermarks.
+     * @param keyFunction A function extracting the state key of an item.
+     * @param watermarkFunction A function extracting the watermark of an item, for example its timestamp.
+     * @return The {@link PublishQueue} with the state store configured.
+     */
+    public PublishQueue<T> withStateStore(StateStore stateStore,
+                                          Function<T, String> keyFunction,
+                                          ToLongFunction<T> watermarkFunction) {
+        Objects.requireNonNull(stateStore, "State store cannot be null");
+        Objects.requireNonNull(keyFunction, "Key function cannot be null");
+        Objects.requireNonNull(watermarkFunction, "Watermark function cannot be null");
+        return toBuilder()
+                .setStateFilter(new StateFilter<>(stateStore, keyFunction, watermarkFunction))
+                .build();
+    }
+
+    /**
+     * Exports the queue metrics via a hook, for example {@link PrometheusPublishQueueMetrics}. The hook is bound
+     * to the queue's {@link #getStats() stats} on {@link #start()}.
+     *
+     * @param metrics The metrics hook.
+     * @return The {@link PublishQueue} with the metrics hook configured.
+     */
+    public PublishQueue<T> withMetrics(PublishQueueMetrics metrics) {
+        Objects.requireNonNull(metrics, "Metrics cannot be null");
+        return toBuilder().setMetrics(metrics).build();
+    }
+
+    /**
+     * Adds an item to the queue. Safe to call from any number of threads.
+     *
+     * Items can be added before the queue is started; they are buffered (up to the queue capacity) until
+     * {@link #start()} is called. If the queue is full, the behavior depends on the {@link BackpressurePolicy}.
+     * Producers must stop adding items before calling {@link #stop()}; items added concurrently with
+     * {@code stop()} may not be published.
+     *
+     * @param item The item to publish.
+     * @return {@code true} if the item was added (or skipped because it is inside the state of the state store),
+     * {@code false} if it was dropped because the queue is full.
+     * @throws IllegalStateException if the queue is full and the policy is {@link BackpressurePolicy#FAIL}, or
+     * if the queue has been stopped.
+     */
+    public boolean put(T item) {
+        Objects.requireNonNull(item, "Item cannot be null");
+        if (stopping) {
+            throw new IllegalStateException("The publish queue has been stopped.");
+        }
+        if (getStateFilter().isPresent() && !getStateFilter().get().isOutsideState(item)) {
+            stats.itemFiltered();
+            return true;
+        }
+        MpscRingBuffer<Object> buffer = getRingBuffer();
+        boolean added = null == segmentLog ? offer(buffer, item) : append(buffer, item);
+        if (!added) {
+            stats.itemDropped();
+            return false;
+        }
+        stats.itemEnqueued();
+        if (consumerWaiting) {
+            LockSupport.unpark(consumerThread);
+        }
+        return true;
+    }
+
+    /*
+    In-memory mode: add the item to the ring buffer, applying the backpressure policy if it is full.
+     */
+    private boolean offer(MpscRingBuffer<Object> buffer, T item) {
+        if (buffer.offer(item)) {
+            return true;
+        }
+        if (!applyBackpressure(buffer)) {
+            return false;
+        }
+        await(() -> buffer.offer(item));
+        return true;
+    }
+
+    /*
+    Durable mode: append the item to the segment log and add it to the ring buffer. Both happen under the append
+    lock, so the ring buffer order matches the log order and acknowledged offsets never skip unpublished items.
+     */
+    private boolean append(MpscRingBuffer<Object> buffer, T item) {
+        byte[] payload = getItemCodec().orElseThrow().encode(item);
+        appendLock.lock();
+        try {
+            // Only the consumer frees up room while we hold the lock, so the offer below cannot fail.
+            if (buffer.size() >= buffer.capacity()) {
+                if (!applyBackpressure(buffer)) {
+                    return false;
+                }
+                await(() -> buffer.size() < buffer.capacity());
+            }
+            long endOffset = segmentLog.append(payload);
+            buffer.offer(new DurableEntry<>(item, endOffset));
+            return true;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /*
+    Applies the backpressure policy to a full queue. Returns true if the producer should wait for room.
+     */
+    private boolean applyBackpressure(MpscRingBuffer<Object> buffer) {
+        return switch (getBackpressurePolicy()) {
+            case DROP -> false;
+            case FAIL -> throw new IllegalStateException(
+                    String.format("The publish queue is full. Capacity: %d", buffer.capacity()));
+            case BLOCK -> true;
+        };
+    }
+
+    /**
+     * The approximate number of items waiting in the queue (not including the batch being collected).
+     * @return the queue depth.
+     */
+    public int size() {
+        return getRingBuffer().size();
+    }
+
+    /**
+     * The live counters of the queue.
+     * @return the queue stats.
+     */
+    public PublishQueueStats getStats() {
+        return stats;
+    }
+
+    /**
+     * A snapshot of the number of items routed to each lane and the number of batches waiting in each lane. An
+     * unpartitioned queue reports a single lane.
+     *
+     * @return the partition stats.
+     * @throws IllegalStateException if the queue has not been started.
+     */
+    public PartitionStats getPartitionStats() {
+        Lane<T>[] current = lanes;
+        if (null == current) {
+            throw new IllegalStateException("The publish queue has not been started.");
+        }
+        List<Long> items = new ArrayList<>(current.length);
+        List<Integer> backlogs = new ArrayList<>(current.length);
+        for (Lane<T> lane : current) {
+            items.add(lane.itemCount);
+            backlogs.add(null == lane.backlog ? 0 : lane.backlog.size() + lane.overflowBatches);
+        }
+        return new PartitionStats(items, backlogs);
+    }
+
+    /**
+     * Start the background thread that collects batches and publishes them to the sink.
+     *
+     * If the background thread has already been started then this method does nothing and returns {@code false}.
+     *
+     * @return {@code true} if the background thread started successfully, {@code false} if it has already been
+     * started.
+     */
+    public boolean start() {
+        String logPrefix = "start() - ";
+        synchronized (lifecycleLock) {
+            if (null != consumerThread) {
+                LOG.warn(logPrefix + "The publish thread has already been started. Start() has no effect.");
+                return false;
+            }
+            if (stopping) {
+                throw new IllegalStateException("The publish queue has been stopped and cannot be restarted.");
+            }
+            getMetrics().ifPresent(metrics -> metrics.bind(stats));
+            // The lanes of a partitioned queue are only limited by the adaptive control.
+            int maxConcurrency = getKeyFunction().isPresent() ? getLaneCount() : getMaxConcurrency();
+            controller = getAdaptiveControl()
+                    .map(control -> AdaptiveController.adaptive(control, getMaxBatchSize()))
+                    .orElseGet(() -> AdaptiveController.fixed(maxConcurrency, getMaxBatchSize()));
+            maxLaneOverflowItems = Math.max(getMaxBatchSize(), getCapacity() / getLaneCount());
+            lanes = createLanes();
+            if (getKeyFunction().isEmpty() && (getAdaptiveControl().isPresent() || getMaxConcurrency() > 1)) {
+                executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("publish-queue-sink-", 0)
+                        .factory());
+            }
+            consumerThread = Thread.ofPlatform()
+                    .name("publish-queue-consumer")
+                    .daemon(true)
+                    .start(this::consume);
+        }
+        LOG.info(logPrefix + "Starting background thread to publish batches. Max batch size: {}, max linger: {}",
+                getMaxBatchSize(), getMaxLinger());
+        return true;
+    }
+
+    /**
+     * Stops the queue. New items are rejected, and the method blocks until the remaining items have been
+     * published and the background thread has stopped.
+     *
+     * @return {@code true} if the background thread stopped successfully, {@code false} if it was not started
+     * in the first place.
+     */
+    public boolean stop() {
+        String logPrefix = "stop() - ";
+        Thread thread;
+        synchronized (lifecycleLock) {
+            stopping = true;
+            thread = consumerThread;
+        }
+        if (null == thread) {
+            // Release the directory lock of a log opened by put(). The stored items are replayed on the next start.
+            if (null != segmentLog) {
+                segmentLog.close();
+            }
+            LOG.warn(logPrefix + "The publish thread has not been started. Stop() has no effect.");
+            return false;
+        }
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn(logPrefix + "Interrupted while waiting for the publish thread to stop.");
+            return false;
+        }
+        if (null != segmentLog) {
+            segmentLog.close();
+        }
+        if (getStateFilter().isPresent()) {
+            LOG.info(logPrefix + "Skipped {} items which were inside the state of the state store.",
+                    stats.getFilteredItems());
+        }
+        LOG.info(logPrefix + "Successfully stopped the background publish thread.");
+        return true;
+    }
+
+    /**
+     * A mirror of the {@link #stop()} method to support auto close in a {@code try-with-resources} statement.
+     *
+     * @see #stop()
+     */
+    @Override
+    public void close() {
+        this.stop();
+    }
+
+    /*
+    The ring buffer (and the segment log in durable mode) is created on first use since the AutoValue properties
+    are not available during construction. The log is assigned before the ring buffer is published.
+     */
+    private MpscRingBuffer<Object> getRingBuffer() {
+        MpscRingBuffer<Object> buffer = ringBuffer;
+        if (null == buffer) {
+            synchronized (lifecycleLock) {
+                buffer = ringBuffer;
+                if (null == buffer) {
+                    if (getStorageDirectory().isPresent()) {
+                        segmentLog = SegmentLog.open(getStorageDirectory().get(), getSegmentBytes());
+                        ackTracker = new AckTracker(segmentLog::acknowledge);
+                    }
+                    buffer = new MpscRingBuffer<>(getCapacity());
+                    ringBuffer = buffer;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /*
+    Creates the lanes. A partitioned queue gets a virtual thread per lane which publishes the lane's batches in
+    order. An unpartitioned queue has a single lane which is flushed directly by the consumer thread.
+     */
+    @SuppressWarnings("unchecked")
+    private Lane<T>[] createLanes() {
+        Lane<T>[] created = new Lane[getLaneCount()];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new Lane<>();
+            if (getKeyFunction().isPresent()) {
+                Lane<T> lane = created[i];
+                lane.backlog = new ArrayBlockingQueue<>(LANE_BACKLOG_CAPACITY);
+                lane.worker = Thread.ofVirtual()
+                        .name("publish-queue-lane-" + i)
+                        .start(() -> drainLane(lane));
+            }
+        }
+        return created;
+    }
+
+    /*
+    Spins, then parks with exponential backoff until the condition is met.
+     */
+    private void await(BooleanSupplier condition) {
+        long backoffNanos = 1_000L;
+        int spins = 0;
+        while (!condition.getAsBoolean()) {
+            if (stopping) {
+                throw new IllegalStateException("The publish queue has been stopped.");
+            }
+            if (consumerWaiting) {
+                LockSupport.unpark(consumerThread);
+            }
+            if (spins++ < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(backoffNanos);
+                backoffNanos = Math.min(backoffNanos * 2, MAX_PRODUCER_BACKOFF_NANOS);
+            }
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for room in the publish queue.");
+            }
+        }
+    }
+
+    /*
+    The consumer loop. Routes items to their lane's batch and flushes a batch on size, bytes or linger time. On
+    stop, the remaining items are drained and flushed, and the loop waits for the lanes and the sink calls in
+    flight. In durable mode, the unpublished items of a previous run are replayed first.
+     */
+    @SuppressWarnings("unchecked")
+    private void consume() {
+        MpscRingBuffer<Object> buffer = getRingBuffer();
+        long maxLingerNanos = getMaxLinger().toNanos();
+
+        if (null != segmentLog) {
+            ItemCodec<T> codec = getItemCodec().orElseThrow();
+            lastEndOffset = segmentLog.getAcknowledgedOffset();
+            segmentLog.replay((payload, endOffset) -> add(codec.decode(payload), endOffset));
+        }
+
+        while (true) {
+            // Stop taking new items while a lane's overflow is full, but keep flushing the other lanes.
+            boolean saturated = !overflowingLanes.isEmpty() && handOff();
+            Object element = saturated ? null : buffer.poll();
+            if (null != element) {
+                if (element instanceof DurableEntry<?> entry) {
+                    add((T) entry.item(), entry.endOffset());
+                } else {
+                    add((T) element, -1L);
+                }
+                continue;
+            }
+
+            // The ring buffer is empty, or the consumer waits for a saturated lane.
+            if (stopping && buffer.isEmpty()) {
+                break;
+            }
+            long now = System.nanoTime();
+            long waitNanos = maxLingerNanos;
+            for (Lane<T> lane : lanes) {
+                if (lane.batch.isEmpty()) {
+                    continue;
+                }
+                if (now - lane.batchDeadline >= 0) {
+                    flush(lane, FlushReason.TIME);
+                } else {
+                    waitNanos = Math.min(waitNanos, lane.batchDeadline - now);
+                }
+            }
+            consumerWaiting = true;
+            if (saturated) {
+                // The lane workers unpark the consumer when they take a batch; the short wait covers a missed signal.
+                LockSupport.parkNanos(this, Math.min(waitNanos, MAX_PRODUCER_BACKOFF_NANOS));
+            } else if (buffer.isEmpty() && !stopping) {
+                LockSupport.parkNanos(this, waitNanos);
+            }
+            consumerWaiting = false;
+        }
+
+        for (Lane<T> lane : lanes) {
+            if (!lane.batch.isEmpty()) {
+                flush(lane, FlushReason.SHUTDOWN);
+            }
+        }
+        stopLanes();
+        try {
+            controller.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("consume() - Interrupted while waiting for the sink calls in flight.");
+        }
+        if (null != executor) {
+            executor.close();
+        }
+    }
+
+    /*
+    Adds an item to its lane's batch and flushes the batch if it reached the current batch size or the max bytes.
+     */
+    private void add(T item, long endOffset) {
+        Lane<T> lane = lanes[laneOf(item)];
+        if (lane.batch.isEmpty()) {
+            lane.batchDeadline = System.nanoTime() + getMaxLinger().toNanos();
+            lane.batchStartOffset = lastEndOffset;
+        }
+        lastEndOffset = endOffset;
+        lane.batch.add(item);
+        lane.itemCount++;
+        lane.batchBytes += getItemSizer().applyAsLong(item);
+        lane.batchEndOffset = endOffset;
+        if (lane.batch.size() >= controller.getBatchSize()) {
+            flush(lane, FlushReason.SIZE);
+        } else if (lane.batchBytes >= getMaxBatchBytes()) {
+            flush(lane, FlushReason.BYTES);
+        }
+    }
+
+    /*
+    Maps an item to a lane by the hash of its key. The hash is spread so that keys with similar hash codes, such as
+    sequential numbers, don't cluster in neighbouring lanes.
+     */
+    private int laneOf(T item) {
+        if (lanes.length == 1) {
+            return 0;
+        }
+        Object key = getKeyFunction().orElseThrow().apply(item);
+        if (null == key) {
+            return 0;
+        }
+        int hash = key.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    /*
+    Hands the lane's batch over for publishing and starts a new batch. In a partitioned queue, the batch is added
+    to the lane's backlog without blocking, or to the lane's overflow while the backlog is full. Otherwise, the
+    batch is published on the consumer thread when the max concurrency is one, or on a virtual thread, blocking
+    while the concurrency limit is reached.
+     */
+    private void flush(Lane<T> lane, FlushReason reason) {
+        List<T> items = new ArrayList<>(lane.batch);
+        AckTracker.Pending ack = null == ackTracker ? null : ackTracker.register(safeOffset(lane));
+        StateFilter.Pending state = getStateFilter().map(filter -> filter.register(items)).orElse(null);
+        lane.batch.clear();
+        lane.batchBytes = 0L;
+        PendingBatch<T> pending = new PendingBatch<>(items, reason, ack, state);
+        stats.batchFlushed(reason);
+
+        if (null != lane.backlog) {
+            if (lane.overflow.isEmpty()) {
+                if (lane.backlog.offer(pending)) {
+                    if (lane.stopped) {
+                        discardBacklog(lane);
+                    }
+                    return;
+                }
+                overflowingLanes.add(lane);
+            }
+            lane.overflow.addLast(pending);
+            lane.overflowItems += items.size();
+            lane.overflowBatches = lane.overflow.size();
+            return;
+        }
+        controller.acquire();
+        if (null == executor) {
+            publish(pending);
+        } else {
+            executor.execute(() -> publish(pending));
+        }
+    }
+
+    /*
+    The offset which may be acknowledged once the lane's batch and all earlier batches have been published. The
+    lanes interleave in the log, so the offset must not pass the first item of a batch still collecting in another
+    lane.
+     */
+    private long safeOffset(Lane<T> flushed) {
+        long offset = flushed.batchEndOffset;
+        for (Lane<T> lane : lanes) {
+            if (lane != flushed && !lane.batch.isEmpty()) {
+                offset = Math.min(offset, lane.batchStartOffset);
+            }
+        }
+        return offset;
+    }
+
+    /*
+    Moves the overflow batches of the lanes into their backlogs while there is room. Returns true if a lane's
+    overflow is still full.
+     */
+    private boolean handOff() {
+        boolean saturated = false;
+        for (Iterator<Lane<T>> iterator = overflowingLanes.iterator(); iterator.hasNext(); ) {
+            Lane<T> lane = iterator.next();
+            while (!lane.overflow.isEmpty() && lane.backlog.offer(lane.overflow.peekFirst())) {
+                lane.overflowItems -= lane.overflow.pollFirst().items().size();
+            }
+            if (lane.stopped) {
+                discardBacklog(lane);
+            }
+            lane.overflowBatches = lane.overflow.size();
+            if (lane.overflow.isEmpty()) {
+                iterator.remove();
+            } else if (lane.overflowItems >= maxLaneOverflowItems) {
+                saturated = true;
+            }
+        }
+        return saturated;
+    }
+
+    /*
+    The lane worker loop: publishes the lane's batches one at a time until it receives the end marker. An
+    interrupted worker stops, and the batches waiting for it are discarded.
+     */
+    private void drainLane(Lane<T> lane) {
+        while (true) {
+            PendingBatch<T> pending;
+            try {
+                pending = lane.backlog.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("drainLane() - The lane thread {} was interrupted and stops. Its waiting batches are "
+                        + "discarded.", Thread.currentThread().getName());
+                lane.stopped = true;
+                discardBacklog(lane);
+                return;
+            }
+            if (consumerWaiting) {
+                LockSupport.unpark(consumerThread);
+            }
+            if (null == pending.items()) {
+                return;
+            }
+            controller.acquire();
+            publish(pending);
+        }
+    }
+
+    /*
+    Discards the batches in the backlog of a stopped lane. Called by the lane worker when it stops, and by the
+    consumer thread for batches handed over concurrently.
+     */
+    private void discardBacklog(Lane<T> lane) {
+        PendingBatch<T> pending;
+        while (null != (pending = lane.backlog.poll())) {
+            discard(pending);
+        }
+    }
+
+    private void discard(PendingBatch<T> pending) {
+        if (null == pending.items()) {
+            return;
+        }
+        stats.batchDiscarded(pending.items().size());
+        blockState(pending);
+        LOG.error("discard() - The lane thread has stopped. A batch of {} items is discarded{}.",
+                pending.items().size(), discardNote(pending));
+    }
+
+    /*
+    Signals the lane workers to stop once their backlog and overflow are published, and waits for them.
+     */
+    private void stopLanes() {
+        for (Lane<T> lane : lanes) {
+            if (null != lane.worker) {
+                while (!lane.overflow.isEmpty()) {
+                    handOffBlocking(lane, lane.overflow.pollFirst());
+                }
+                lane.overflowItems = 0;
+                lane.overflowBatches = 0;
+                handOffBlocking(lane, new PendingBatch<>(null, FlushReason.SHUTDOWN, null, null));
+            }
+        }
+        overflowingLanes.clear();
+        for (Lane<T> lane : lanes) {
+            if (null != lane.worker) {
+                try {
+                    lane.worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOG.warn("stopLanes() - Interrupted while waiting for the lane threads to stop.");
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+    Hands a batch over to a lane on shutdown, waiting for room in the backlog. If the lane worker has stopped, the
+    batch is discarded instead.
+     */
+    private void handOffBlocking(Lane<T> lane, PendingBatch<T> pending) {
+        boolean interrupted = false;
+        boolean handedOver = false;
+        while (!handedOver && !lane.stopped) {
+            try {
+                handedOver = lane.backlog.offer(pending, LANE_HAND_OFF_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (!handedOver) {
+            discard(pending);
+        }
+        if (lane.stopped) {
+            discardBacklog(lane);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+    Publishes a batch to the sink, retrying according to the retry policy, and feeds the outcome to the
+    controller. The backoff sleeps on the calling thread, i.e. the consumer thread when the max concurrency is
+    one. In durable mode, only a published batch is completed in the ack tracker; a discarded batch stays in the
+    log for replay.
+     */
+    private void publish(PendingBatch<T> pending) {
+        try {
+            long latencyNanos = publishWithRetries(pending);
+            if (latencyNanos >= 0) {
+                published(pending, latencyNanos);
+            } else {
+                blockState(pending);
+            }
+        } finally {
+            controller.release();
+        }
+    }
+
+    /*
+    Calls the sink until it accepts the batch or the retries are exhausted. Only the sink call is retried.
+    Returns the latency of the successful sink call, or -1 if the batch is discarded.
+     */
+    private long publishWithRetries(PendingBatch<T> pending) {
+        String logPrefix = "publishWithRetries() - ";
+        List<T> items = pending.items();
+        try {
+            for (int retry = 0; ; retry++) {
+                long startNanos = System.nanoTime();
+                Duration backoff = getRetryPolicy().backoff(retry);
+                Exception failure;
+                try {
+                    getSink().publish(items);
+                    return System.nanoTime() - startNanos;
+                } catch (ThrottledException e) {
+                    controller.onThrottled();
+                    stats.throttled();
+                    Duration retryAfter = e.getRetryAfter().orElse(Duration.ZERO);
+                    backoff = retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+                    failure = e;
+                } catch (Exception e) {
+                    controller.onError();
+                    failure = e;
+                }
+                if (retry >= getRetryPolicy().getMaxRetries()) {
+                    stats.batchDiscarded(items.size());
+                    LOG.error(logPrefix + "Failed to publish a batch of {} items after {} retries. "
+                            + "The batch is discarded{}. {}", items.size(), retry, discardNote(pending),
+                            failure.toString());
+                    return -1L;
+                }
+                LOG.debug(logPrefix + "Failed to publish a batch of {} items. Retrying in {}. {}",
+                        items.size(), backoff, failure.toString());
+                stats.retried();
+                Thread.sleep(backoff);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stats.batchDiscarded(items.size());
+            LOG.error(logPrefix + "Interrupted while retrying a batch of {} items. The batch is discarded{}.",
+                    items.size(), discardNote(pending));
+            return -1L;
+        }
+    }
+
+    /*
+    The bookkeeping for a batch the sink has accepted. It runs outside the sink retries, so a failure here never
+    publishes the batch again. The metrics hook is user code, so its errors are logged and otherwise ignored.
+     */
+    private void published(PendingBatch<T> pending, long latencyNanos) {
+        String logPrefix = "published() - ";
+        List<T> items = pending.items();
+        controller.onSuccess(latencyNanos);
+        stats.batchPublished(items.size());
+        if (getMetrics().isPresent()) {
+            try {
+                getMetrics().get().recordBatch(pending.reason(), items.size(), latencyNanos);
+            } catch (RuntimeException e) {
+                LOG.error(logPrefix + "The metrics hook failed to record a published batch of {} items. {}",
+                        items.size(), e.toString());
+            }
+        }
+        LOG.debug(logPrefix + "Published a batch of {} items. Flush reason: {}", items.size(), pending.reason());
+        acknowledge(pending);
+        expandState(pending);
+    }
+
+    /*
+    Completes a published batch in the ack tracker. The batch is already published, so a failure to write the
+    consumer offset (e.g. an IO or mapping error) must not publish it again. It is logged, and the batch is
+    replayed from the durable log on the next start unless a later acknowledgement covers it.
+     */
+    private void acknowledge(PendingBatch<T> pending) {
+        if (null == pending.ack()) {
+            return;
+        }
+        try {
+            ackTracker.complete(pending.ack());
+        } catch (RuntimeException e) {
+            LOG.error("acknowledge() - Failed to acknowledge a published batch of {} items in the durable log. "
+                    + "It may be published again on the next start. {}", pending.items().size(), e.toString());
+        }
+    }
+
+    private static String discardNote(PendingBatch<?> pending) {
+        return null == pending.ack() ? "" : " and will be replayed from the durable log on the next start";
+    }
+
+    /*
+    Expands the state store watermarks to cover a published batch, and any later batches of its keys which were
+    published before it. A failing state store must not cause the batch to be published again, so errors are
+    logged and otherwise ignored.
+     */
+    private void expandState(PendingBatch<T> pending) {
+        if (null == pending.state()) {
+            return;
+        }
+        try {
+            getStateFilter().orElseThrow().complete(pending.state());
+        } catch (RuntimeException e) {
+            LOG.error("expandState() - Failed to update the state store for a published batch of {} items. {}",
+                    pending.items().size(), e.toString());
+        }
+    }
+
+    /*
+    Blocks the state of the keys of a discarded batch, so the state store never covers its items. The later
+    batches of these keys are no longer tracked by the state filter.
+     */
+    private void blockState(PendingBatch<T> pending) {
+        if (null != pending.state()) {
+            getStateFilter().orElseThrow().discard(pending.state());
+        }
+    }
+
+    /*
+    A ring buffer entry in durable mode: the item and the end offset of its record in the segment log.
+     */
+    private record DurableEntry<T>(T item, long endOffset) {}
+
+    /*
+    A batch handed over for publishing, with its handles in the ack tracker and state filter, if enabled. A batch
+    without items marks the end of a lane's backlog.
+     */
+    private record PendingBatch<T>(List<T> items, FlushReason reason, AckTracker.Pending ack,
+                                   StateFilter.Pending state) {}
+
+    /*
+    A lane collects batches of the items routed to it. The batch and overflow are only accessed by the consumer
+    thread, and the item and overflow counts are only written by the consumer thread. The backlog and worker are
+    only set when partitioned.
+     */
+    private static final class Lane<T> {
+        private final List<T> batch = new ArrayList<>();
+        private long batchBytes = 0L;
+        private long batchDeadline = 0L;
+        private long batchStartOffset = -1L;
+        private long batchEndOffset = -1L;
+        private volatile long itemCount = 0L;
+        private final ArrayDeque<PendingBatch<T>> overflow = new ArrayDeque<>();
+        private int overflowItems = 0;
+        private volatile int overflowBatches = 0;
+        private BlockingQueue<PendingBatch<T>> backlog;
+        private Thread worker;
+        private volatile boolean stopped = false;
+    }
+
+    @AutoValue.Builder
+    abstract static class Builder<T> {
+        abstract Builder<T> setSink(PublishSink<T> value);
+        abstract Builder<T> setCapacity(int value);
+        abstract Builder<T> setMaxBatchSize(int value);
+        abstract Builder<T> setMaxBatchBytes(long value);
+        abstract Builder<T> setItemSizer(ToLongFunction<T> value);
+        abstract Builder<T> setMaxLinger(Duration value);
+        abstract Builder<T> setBackpressurePolicy(BackpressurePolicy value);
+        abstract Builder<T> setStorageDirectory(Path value);
+        abstract Builder<T> setItemCodec(ItemCodec<T> value);
+        abstract Builder<T> setSegmentBytes(int value);
+        abstract Builder<T> setMaxConcurrency(int value);
+        abstract Builder<T> setAdaptiveControl(AdaptiveControl value);
+        abstract Builder<T> setRetryPolicy(RetryPolicy value);
+        abstract Builder<T> setKeyFunction(Function<T, ?> value);
+        abstract Builder<T> setLaneCount(int value);
+        abstract Builder<T> setStateFilter(StateFilter<T> value);
+        abstract Builder<T> setMetrics(PublishQueueMetrics value);
+
+        abstract PublishQueue<T> build();
+    }
 }
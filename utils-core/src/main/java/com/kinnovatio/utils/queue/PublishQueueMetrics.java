@@ -0,0 +1,31 @@
+package com.kinnovatio.utils.queue;
+
+/**
+ * A hook for exporting the metrics of a {@link PublishQueue} to a metrics registry.
+ *
+ * Counters and the queue depth are read from the queue's {@link PublishQueueStats} when the registry is scraped,
+ * so they add no work to the producer path. Only the batch size and sink latency distributions are pushed to the
+ * hook, once per published batch.
+ *
+ * @see PrometheusPublishQueueMetrics
+ */
+public interface PublishQueueMetrics {
+
+    /**
+     * Called when the queue starts. The stats stay readable after the queue has stopped, so the final values can
+     * still be scraped or pushed.
+     *
+     * @param stats the queue's counters.
+     */
+    void bind(PublishQueueStats stats);
+
+    /**
+     * Called from the publishing thread when the sink has published a batch. An exception is logged, and does not
+     * cause the batch to be published again.
+     *
+     * @param reason the reason the batch was flushed.
+     * @param batchSize the number of items in the batch.
+     * @param sinkLatencyNanos the latency of the successful sink call.
+     */
+    void recordBatch(FlushReason reason, int batchSize, long sinkLatencyNanos);
+}
@@ -0,0 +1,134 @@
+package com.kinnovatio.utils.queue;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Live counters of a {@link PublishQueue}. The counters are striped ({@link LongAdder}), so updating them from
+ * many producer threads does not become a contention point. Reading a counter sums the stripes, so reads are
+ * meant for periodic metric scrapes rather than hot paths.
+ */
+public final class PublishQueueStats {
+    private final IntSupplier queueDepth;
+    private final LongAdder enqueuedItems = new LongAdder();
+    private final LongAdder droppedItems = new LongAdder();
+    private final LongAdder filteredItems = new LongAdder();
+    private final LongAdder publishedItems = new LongAdder();
+    private final LongAdder discardedItems = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder throttledCalls = new LongAdder();
+    private final LongAdder[] flushes = new LongAdder[FlushReason.values().length];
+
+    PublishQueueStats(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+        for (int i = 0; i < flushes.length; i++) {
+            flushes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * The approximate number of items waiting in the queue.
+     * @return the queue depth.
+     */
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * The number of items added to the queue.
+     * @return the enqueued item count.
+     */
+    public long getEnqueuedItems() {
+        return enqueuedItems.sum();
+    }
+
+    /**
+     * The number of items dropped because the queue was full and the backpressure policy is
+     * {@link BackpressurePolicy#DROP}.
+     * @return the dropped item count.
+     */
+    public long getDroppedItems() {
+        return droppedItems.sum();
+    }
+
+    /**
+     * The number of items skipped because they were inside the state of the state store.
+     * @return the filtered item count.
+     */
+    public long getFilteredItems() {
+        return filteredItems.sum();
+    }
+
+    /**
+     * The number of items published to the sink.
+     * @return the published item count.
+     */
+    public long getPublishedItems() {
+        return publishedItems.sum();
+    }
+
+    /**
+     * The number of items discarded because the sink failed to publish their batch.
+     * @return the discarded item count.
+     */
+    public long getDiscardedItems() {
+        return discardedItems.sum();
+    }
+
+    /**
+     * The number of retried sink calls.
+     * @return the retry count.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * The number of sink calls rejected with a {@link ThrottledException}.
+     * @return the throttled call count.
+     */
+    public long getThrottledCalls() {
+        return throttledCalls.sum();
+    }
+
+    /**
+     * The number of batches flushed for a given reason.
+     * @param reason the flush reason.
+     * @return the flush count.
+     */
+    public long getFlushes(FlushReason reason) {
+        return flushes[reason.ordinal()].sum();
+    }
+
+    void itemEnqueued() {
+        enqueuedItems.increment();
+    }
+
+    void itemDropped() {
+        droppedItems.increment();
+    }
+
+    void itemFiltered() {
+        filteredItems.increment();
+    }
+
+    void batchFlushed(FlushReason reason) {
+        flushes[reason.ordinal()].increment();
+    }
+
+    void batchPublished(int size) {
+        publishedItems.add(size);
+    }
+
+    void batchDiscarded(int size) {
+        discardedItems.add(size);
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    void throttled() {
+        throttledCalls.increment();
+    }
+}
@@ -0,0 +1,26 @@
+package com.kinnovatio.utils.queue;
+
+import java.util.List;
+
+/**
+ * The destination of the batches published by a {@link PublishQueue}. Typically a client for a downstream API,
+ * message broker or storage system.
+ *
+ * The sink must be thread-safe if the queue publishes batches concurrently.
+ *
+ * @param <T> the item type.
+ */
+@FunctionalInterface
+public interface PublishSink<T> {
+
+    /**
+     * Publishes a batch of items. The call should return once the batch has been accepted by the downstream
+     * system; throw an exception if the batch could not be published. Throw a {@link ThrottledException} if the
+     * downstream system rejected the batch because of rate limiting or overload.
+     *
+     * @param batch the items to publish. The list must not be modified.
+     * @throws ThrottledException if the downstream system is throttling requests.
+     * @throws Exception if the batch could not be published.
+     */
+    void publish(List<T> batch) throws Exception;
+}
@@ -0,0 +1,120 @@
+package com.kinnovatio.utils.queue;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Specifies how a {@link PublishQueue} retries batches that the sink fails to publish.
+ *
+ * Retries use exponential backoff with full jitter: before retry {@code n} (starting at 0) the queue waits a random
+ * duration between zero and {@code min(maxBackoff, initialBackoff * 2^n)}. Jitter spreads out the retries of
+ * concurrent batches, so that they don't hit the downstream system in lockstep.
+ */
+@AutoValue
+public abstract class RetryPolicy {
+    protected static final int DEFAULT_MAX_RETRIES = 3;
+    protected static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(100L);
+    protected static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10L);
+
+    private static Builder builder() {
+        return new AutoValue_RetryPolicy.Builder()
+                .setMaxRetries(DEFAULT_MAX_RETRIES)
+                .setInitialBackoff(DEFAULT_INITIAL_BACKOFF)
+                .setMaxBackoff(DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * A retry policy with the provided max number of retries. The default initial backoff is 100 milliseconds and
+     * the default max backoff is 10 seconds.
+     *
+     * @param maxRetries the max number of retries per batch.
+     * @return the retry policy.
+     */
+    public static RetryPolicy of(int maxRetries) {
+        Preconditions.checkArgument(maxRetries >= 0, "The max retries cannot be negative");
+        return RetryPolicy.builder()
+                .setMaxRetries(maxRetries)
+                .build();
+    }
+
+    /**
+     * A retry policy without retries. Failed batches are discarded immediately.
+     *
+     * @return the retry policy.
+     */
+    public static RetryPolicy none() {
+        return RetryPolicy.of(0);
+    }
+
+    abstract Builder toBuilder();
+
+    /**
+     * The max number of retries per batch.
+     * @return the max retries.
+     */
+    public abstract int getMaxRetries();
+
+    /**
+     * The upper bound of the backoff before the first retry.
+     * @return the initial backoff.
+     */
+    public abstract Duration getInitialBackoff();
+
+    /**
+     * The upper bound of the backoff before any retry.
+     * @return the max backoff.
+     */
+    public abstract Duration getMaxBackoff();
+
+    /**
+     * Sets the upper bound of the backoff before the first retry.
+     *
+     * @param initialBackoff The initial backoff.
+     * @return The {@link RetryPolicy} with the initial backoff configured.
+     */
+    public RetryPolicy withInitialBackoff(Duration initialBackoff) {
+        Objects.requireNonNull(initialBackoff, "Initial backoff cannot be null");
+        Preconditions.checkArgument(!initialBackoff.isNegative() && !initialBackoff.isZero(),
+                "The initial backoff must be positive");
+        return toBuilder().setInitialBackoff(initialBackoff).build();
+    }
+
+    /**
+     * Sets the upper bound of the backoff before any retry.
+     *
+     * @param maxBackoff The max backoff.
+     * @return The {@link RetryPolicy} with the max backoff configured.
+     */
+    public RetryPolicy withMaxBackoff(Duration maxBackoff) {
+        Objects.requireNonNull(maxBackoff, "Max backoff cannot be null");
+        Preconditions.checkArgument(!maxBackoff.isNegative() && !maxBackoff.isZero(),
+                "The max backoff must be positive");
+        return toBuilder().setMaxBackoff(maxBackoff).build();
+    }
+
+    /**
+     * Computes the backoff before a retry.
+     *
+     * @param retry the retry number, starting at 0.
+     * @return a random backoff between zero and the capped exponential backoff.
+     */
+    Duration backoff(int retry) {
+        long capNanos = getMaxBackoff().toNanos();
+        long exponentialNanos = getInitialBackoff().toNanos() << Math.min(retry, 30);
+        long boundNanos = exponentialNanos <= 0 ? capNanos : Math.min(capNanos, exponentialNanos);
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(boundNanos + 1));
+    }
+
+    @AutoValue.Builder
+    abstract static class Builder {
+        abstract Builder setMaxRetries(int value);
+        abstract Builder setInitialBackoff(Duration value);
+        abstract Builder setMaxBackoff(Duration value);
+
+        abstract RetryPolicy build();
+    }
+}
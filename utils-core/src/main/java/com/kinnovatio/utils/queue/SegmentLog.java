@@ -0,0 +1,412 @@
+package com.kinnovatio.utils.queue;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of items stored in rolling, memory-mapped segment files, with a persisted consumer offset.
+ *
+ * Each segment file is named by its base offset, i.e. the global byte offset of its first record. A record is
+ * stored as a 4-byte header holding the payload length plus one, a 4-byte CRC32C checksum of the payload and the
+ * payload itself. The header is written last, behind a fence, so a zero header marks the end of the records and
+ * readers continue with the next segment when they reach it. Unused space at the end of a segment is zero-filled.
+ *
+ * On open, the records of the active segment are validated: the first record which overruns the segment or fails
+ * its checksum, for example because the machine crashed before the page cache was written back, ends the log, and
+ * the rest of the segment is zeroed before new records are appended.
+ *
+ * Appends must be serialized by the caller. Each payload is copied once, from the encoded byte array into the
+ * mapped segment. Memory-mapped writes survive a crash of the process (the data is in the OS page cache), and the
+ * segments are forced to the storage device when they are rolled and on close. The directory is locked while the
+ * log is open, so only one log can use it at a time.
+ */
+final class SegmentLog implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLog.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_FILE = "consumer.offset";
+    private static final String LOCK_FILE = "log.lock";
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final MappedByteBuffer offsetBuffer;
+    private final long replayEndOffset;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final CRC32C checksum = new CRC32C();
+
+    private MappedByteBuffer activeSegment;
+    private long activeBaseOffset;
+    private volatile long acknowledgedOffset;
+    private boolean closed = false;
+
+    private SegmentLog(Path directory, int segmentBytes, FileChannel lockChannel, FileLock lock) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.lockChannel = lockChannel;
+        this.lock = lock;
+
+        try (FileChannel channel = FileChannel.open(directory.resolve(OFFSET_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            offsetBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(SegmentLog::isSegmentFile).toList()) {
+                segments.put(baseOffsetOf(file), map(file, Files.size(file)));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            roll(offsetBuffer.getLong(0), segmentBytes);
+        } else {
+            activeBaseOffset = segments.lastKey();
+            activeSegment = segments.lastEntry().getValue();
+            int end = endOfRecords(activeSegment);
+            if (zeroFrom(activeSegment, end)) {
+                LOG.warn("open() - Discarded a torn or corrupt record at offset {} in {}",
+                        activeBaseOffset + end, segmentPath(activeBaseOffset));
+            }
+            activeSegment.position(end);
+        }
+        acknowledgedOffset = Math.max(offsetBuffer.getLong(0), segments.firstKey());
+        if (acknowledgedOffset > getEndOffset()) {
+            // The offset file was written back but the tail of the log was lost. New records must not be
+            // appended below the acknowledged offset, as they would count as published on the next open.
+            LOG.warn("open() - The acknowledged offset {} is past the end of the log {}. Starting a new segment.",
+                    acknowledgedOffset, getEndOffset());
+            activeSegment.force();
+            roll(acknowledgedOffset, segmentBytes);
+        }
+        replayEndOffset = getEndOffset();
+    }
+
+    /**
+     * Opens the log in a directory, creating the directory if it does not exist.
+     *
+     * @param directory the directory holding the segment files.
+     * @param segmentBytes the size of each segment file.
+     * @return the log.
+     * @throws UncheckedIOException if the log cannot be opened.
+     * @throws IllegalStateException if the directory is locked by another open log.
+     */
+    static SegmentLog open(Path directory, int segmentBytes) {
+        FileChannel lockChannel = null;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = tryLock(lockChannel);
+            if (null == lock) {
+                throw new IllegalStateException("The durable publish log at " + directory
+                        + " is already in use by another queue.");
+            }
+            SegmentLog log = new SegmentLog(directory, segmentBytes, lockChannel, lock);
+            LOG.info("open() - Opened the durable publish log at {}. Unacknowledged bytes to replay: {}",
+                    directory, log.replayEndOffset - log.acknowledgedOffset);
+            return log;
+        } catch (IOException e) {
+            closeQuietly(lockChannel);
+            throw new UncheckedIOException("Unable to open the durable publish log at " + directory, e);
+        } catch (RuntimeException e) {
+            closeQuietly(lockChannel);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record. Not thread-safe: the caller must serialize appends.
+     *
+     * @param payload the record payload. May be empty.
+     * @return the end offset of the record, i.e. the offset to acknowledge once the record has been published.
+     */
+    long append(byte[] payload) {
+        Preconditions.checkArgument(payload.length <= Integer.MAX_VALUE - HEADER_BYTES,
+                "The payload is too large for a segment");
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (activeSegment.remaining() < recordBytes) {
+            activeSegment.force();
+            // A record larger than the segment size gets an oversized segment of its own.
+            roll(getEndOffset(), Math.max(segmentBytes, recordBytes));
+        }
+        int position = activeSegment.position();
+        checksum.reset();
+        checksum.update(payload);
+        activeSegment.putInt(position + Integer.BYTES, (int) checksum.getValue());
+        activeSegment.put(position + HEADER_BYTES, payload);
+        // The header must not become visible before the checksum and payload.
+        VarHandle.releaseFence();
+        activeSegment.putInt(position, payload.length + 1);
+        activeSegment.position(position + recordBytes);
+        return activeBaseOffset + position + recordBytes;
+    }
+
+    /**
+     * Reads the records written before the log was opened which have not been acknowledged. Each payload is
+     * passed as a read-only view of the mapped segment, without copying, together with the end offset of the
+     * record. A corrupt record in an earlier segment is logged and ends the replay of that segment.
+     *
+     * @param consumer the consumer of the record payloads and their end offsets.
+     */
+    void replay(RecordConsumer consumer) {
+        long offset = acknowledgedOffset;
+        for (Map.Entry<Long, MappedByteBuffer> segment : segments.entrySet()) {
+            long baseOffset = segment.getKey();
+            ByteBuffer buffer = segment.getValue().duplicate();
+            if (baseOffset >= replayEndOffset) {
+                return;
+            }
+            if (baseOffset + buffer.capacity() <= offset) {
+                continue;
+            }
+            int position = (int) Math.max(0, offset - baseOffset);
+            while (baseOffset + position < replayEndOffset) {
+                int end = recordEnd(buffer, position);
+                if (end <= position) {
+                    if (end < 0) {
+                        LOG.warn("replay() - Skipping the rest of {} after a corrupt record at offset {}",
+                                segmentPath(baseOffset), baseOffset + position);
+                    }
+                    break;
+                }
+                consumer.accept(buffer.slice(position + HEADER_BYTES, end - position - HEADER_BYTES)
+                        .asReadOnlyBuffer(), baseOffset + end);
+                position = end;
+            }
+        }
+    }
+
+    /**
+     * Persists the consumer offset and deletes the segments which only hold acknowledged records.
+     *
+     * @param offset the end offset of the last published record.
+     */
+    void acknowledge(long offset) {
+        if (offset <= acknowledgedOffset) {
+            return;
+        }
+        acknowledgedOffset = offset;
+        offsetBuffer.putLong(0, offset);
+
+        // A segment can be deleted when the next segment starts at or before the acknowledged offset.
+        List<Long> deletable = new ArrayList<>();
+        Long base = segments.firstKey();
+        Long next = segments.higherKey(base);
+        while (null != next && next <= offset) {
+            deletable.add(base);
+            base = next;
+            next = segments.higherKey(next);
+        }
+        for (Long segment : deletable) {
+            segments.remove(segment);
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+                LOG.debug("acknowledge() - Deleted acknowledged segment {}", segmentPath(segment));
+            } catch (IOException e) {
+                LOG.warn("acknowledge() - Unable to delete acknowledged segment {}: {}",
+                        segmentPath(segment), e.toString());
+            }
+        }
+    }
+
+    /**
+     * The offset following the last written record.
+     * @return the end offset.
+     */
+    long getEndOffset() {
+        return activeBaseOffset + activeSegment.position();
+    }
+
+    /**
+     * The end offset of the records to replay, i.e. the end offset of the log when it was opened.
+     * @return the replay end offset.
+     */
+    long getReplayEndOffset() {
+        return replayEndOffset;
+    }
+
+    /**
+     * The persisted consumer offset.
+     * @return the acknowledged offset.
+     */
+    long getAcknowledgedOffset() {
+        return acknowledgedOffset;
+    }
+
+    /**
+     * Forces the active segment and the consumer offset to the storage device and releases the directory lock.
+     * Closing a closed log has no effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        activeSegment.force();
+        offsetBuffer.force();
+        try {
+            lock.release();
+        } catch (IOException e) {
+            LOG.warn("close() - Unable to release the lock on {}: {}", directory, e.toString());
+        }
+        closeQuietly(lockChannel);
+    }
+
+    private void roll(long baseOffset, int size) {
+        try {
+            Path file = segmentPath(baseOffset);
+            activeSegment = map(file, size);
+            activeBaseOffset = baseOffset;
+            segments.put(baseOffset, activeSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create a new segment in " + directory, e);
+        }
+    }
+
+    /*
+    Maps a file, extending it with zeros to the requested size if needed.
+     */
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /*
+    Scans a segment for the position following its last valid record.
+     */
+    private static int endOfRecords(ByteBuffer segment) {
+        int position = 0;
+        int end;
+        while ((end = recordEnd(segment, position)) > position) {
+            position = end;
+        }
+        return position;
+    }
+
+    /*
+    Validates the record at a position. Returns the position following the record, the position itself if there is
+    no record (a zero header or no room for one), or -1 if the record overruns the segment or fails its checksum.
+     */
+    private static int recordEnd(ByteBuffer segment, int position) {
+        if (segment.capacity() - position < HEADER_BYTES) {
+            return position;
+        }
+        int header = segment.getInt(position);
+        if (header == 0) {
+            return position;
+        }
+        int length = header - 1;
+        if (length < 0 || length > segment.capacity() - position - HEADER_BYTES) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(segment.slice(position + HEADER_BYTES, length));
+        if ((int) crc.getValue() != segment.getInt(position + Integer.BYTES)) {
+            return -1;
+        }
+        return position + HEADER_BYTES + length;
+    }
+
+    /*
+    Zeroes a segment from a position, so that the remains of a torn record are not mistaken for records appended
+    later. Returns true if any non-zero bytes were found.
+     */
+    private static boolean zeroFrom(MappedByteBuffer segment, int position) {
+        int capacity = segment.capacity();
+        int alignedStart = Math.min(capacity, (position + Long.BYTES - 1) & -Long.BYTES);
+        int alignedEnd = Math.max(alignedStart, capacity & -Long.BYTES);
+        boolean dirty = zeroBytes(segment, position, alignedStart);
+        for (int i = alignedStart; i < alignedEnd; i += Long.BYTES) {
+            if (segment.getLong(i) != 0L) {
+                segment.putLong(i, 0L);
+                dirty = true;
+            }
+        }
+        dirty |= zeroBytes(segment, alignedEnd, capacity);
+        if (dirty) {
+            segment.force();
+        }
+        return dirty;
+    }
+
+    private static boolean zeroBytes(ByteBuffer segment, int from, int to) {
+        boolean dirty = false;
+        for (int i = from; i < to; i++) {
+            if (segment.get(i) != 0) {
+                segment.put(i, (byte) 0);
+                dirty = true;
+            }
+        }
+        return dirty;
+    }
+
+    /*
+    Locks the directory. Returns null if another process holds the lock.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another log in this JVM.
+            return null;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (null == channel) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("close() - Unable to close {}: {}", channel, e.toString());
+        }
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, baseOffset, SEGMENT_SUFFIX));
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long baseOffsetOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * The consumer of replayed records.
+     */
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(ByteBuffer payload, long endOffset);
+    }
+}
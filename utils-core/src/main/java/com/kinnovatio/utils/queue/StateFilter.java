@@ -0,0 +1,169 @@
+package com.kinnovatio.utils.queue;
+
+import com.kinnovatio.utils.statestore.StateStore;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Connects a {@link PublishQueue} to a {@link StateStore}: items inside the stored watermark interval of their key
+ * are filtered out, and the watermarks are expanded once a batch has been published.
+ *
+ * The state of a key is a single interval, so it can not represent a gap. The watermarks of a key therefore only
+ * advance over the contiguous prefix of its published batches, in the order they were registered: a batch which
+ * completes before an earlier batch of the same key waits for it. A batch which is discarded blocks its keys for
+ * the rest of the run: their state still advances over the batches registered before the discarded batch, but
+ * later batches of a blocked key are no longer tracked, so the memory per key stays bounded. Items which are put
+ * in watermark order per key (increasing or decreasing) are then never covered by the state before they have been
+ * published.
+ *
+ * @param <T> the item type.
+ */
+final class StateFilter<T> {
+    private final StateStore stateStore;
+    private final Function<T, String> keyFunction;
+    private final ToLongFunction<T> watermarkFunction;
+
+    // The registered ranges per key, in registration order, until they are added to the state. Guarded by this.
+    private final Map<String, ArrayDeque<Range>> pending = new HashMap<>();
+    // The keys with a discarded batch, whose state no longer advances past it. Guarded by this.
+    private final Set<String> blocked = new HashSet<>();
+
+    StateFilter(StateStore stateStore, Function<T, String> keyFunction, ToLongFunction<T> watermarkFunction) {
+        this.stateStore = stateStore;
+        this.keyFunction = keyFunction;
+        this.watermarkFunction = watermarkFunction;
+    }
+
+    /**
+     * Tests if an item is outside the stored state of its key, i.e. if it has not been published before.
+     *
+     * @param item the item to test.
+     * @return {@code true} if the item should be published.
+     */
+    boolean isOutsideState(T item) {
+        return stateStore.isOutsideState(keyFunction.apply(item), watermarkFunction.applyAsLong(item));
+    }
+
+    /**
+     * Registers a batch before it is published. The batch is reduced to the lowest and highest watermark per key.
+     * Batches must be registered in the order their items were taken from the queue.
+     *
+     * @param batch the batch to publish.
+     * @return the handle to complete when the batch has been published.
+     */
+    Pending register(List<T> batch) {
+        Map<String, Range> bounds = new HashMap<>();
+        for (T item : batch) {
+            long watermark = watermarkFunction.applyAsLong(item);
+            Range range = bounds.computeIfAbsent(keyFunction.apply(item), key -> new Range(key, watermark));
+            range.low = Math.min(range.low, watermark);
+            range.high = Math.max(range.high, watermark);
+        }
+        synchronized (this) {
+            for (Range range : bounds.values()) {
+                if (blocked.contains(range.key)) {
+                    range.untracked = true;
+                } else {
+                    pending.computeIfAbsent(range.key, key -> new ArrayDeque<>()).addLast(range);
+                }
+            }
+        }
+        return new Pending(List.copyOf(bounds.values()));
+    }
+
+    /**
+     * Marks a batch as published and expands the watermarks of its keys over their contiguous prefix of published
+     * batches. The state store is updated once per key. Updates are serialized, since the state store's expand
+     * operations are not atomic and batches may complete concurrently.
+     *
+     * @param batch the batch handle.
+     */
+    synchronized void complete(Pending batch) {
+        for (Range range : batch.ranges) {
+            range.completed = true;
+            ArrayDeque<Range> ranges = pending.get(range.key);
+            if (range.untracked || ranges.peekFirst() != range) {
+                continue;
+            }
+            long low = range.low;
+            long high = range.high;
+            while (!ranges.isEmpty() && ranges.peekFirst().completed) {
+                Range completed = ranges.pollFirst();
+                low = Math.min(low, completed.low);
+                high = Math.max(high, completed.high);
+            }
+            if (ranges.isEmpty()) {
+                pending.remove(range.key);
+            }
+            stateStore.expandLow(range.key, low);
+            stateStore.expandHigh(range.key, high);
+        }
+    }
+
+    /**
+     * Marks a batch as discarded. Its keys are blocked: the batch and the later registered batches of these keys
+     * are dropped, and new batches of these keys are no longer tracked.
+     *
+     * @param batch the batch handle.
+     */
+    synchronized void discard(Pending batch) {
+        for (Range range : batch.ranges) {
+            blocked.add(range.key);
+            if (range.untracked) {
+                continue;
+            }
+            ArrayDeque<Range> ranges = pending.get(range.key);
+            boolean behind = false;
+            for (Iterator<Range> iterator = ranges.iterator(); iterator.hasNext(); ) {
+                Range next = iterator.next();
+                behind = behind || next == range;
+                if (behind) {
+                    next.untracked = true;
+                    iterator.remove();
+                }
+            }
+            if (ranges.isEmpty()) {
+                pending.remove(range.key);
+            }
+        }
+    }
+
+    /**
+     * The number of registered ranges which have not been added to the state.
+     * @return the pending ranges.
+     */
+    synchronized int size() {
+        return pending.values().stream().mapToInt(ArrayDeque::size).sum();
+    }
+
+    static final class Pending {
+        private final List<Range> ranges;
+
+        private Pending(List<Range> ranges) {
+            this.ranges = ranges;
+        }
+    }
+
+    private static final class Range {
+        private final String key;
+        private long low;
+        private long high;
+        private boolean completed = false;
+        // Set when the range is not (or no longer) in the pending ranges of its key, because the key is blocked.
+        private boolean untracked = false;
+
+        private Range(String key, long watermark) {
+            this.key = key;
+            this.low = watermark;
+            this.high = watermark;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.kinnovatio.utils.queue;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Thrown by a {@link PublishSink} when the downstream system rejects a batch because of rate limiting or
+ * overload (for example an HTTP 429 or 503 response).
+ *
+ * A {@link PublishQueue} with adaptive control reduces its concurrency and batch size when it receives this
+ * exception, and retries the batch after the backoff of its {@link RetryPolicy} or the {@code retryAfter} hint,
+ * whichever is longer.
+ */
+public class ThrottledException extends Exception {
+    private final Duration retryAfter;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message the detail message.
+     */
+    public ThrottledException(String message) {
+        this(message, null);
+    }
+
+    /**
+     * Creates the exception with a retry hint from the downstream system, i.e. the {@code Retry-After} header.
+     *
+     * @param message the detail message.
+     * @param retryAfter the minimum time to wait before retrying. May be {@code null}.
+     */
+    public ThrottledException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * The minimum time to wait before retrying, if provided by the downstream system.
+     * @return the retry hint.
+     */
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+}
@@ -0,0 +1,175 @@
+package com.kinnovatio.utils;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlatStructTest {
+
+    @Test
+    void matchesParseStructOnRandomStructs() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            Struct struct = randomStruct(random, 0);
+            FlatStruct flat = FlatStruct.index(struct);
+            List<String> paths = new ArrayList<>(flat.getPaths());
+            paths.addAll(List.of("a", "a.b", "b.a.c", "c.c.c", "missing", "a.missing"));
+            for (String path : paths) {
+                assertEquals(ParseStruct.parseStringList(struct, Arrays.asList(path.split("\\."))),
+                        flat.getStrings(path), path + " in " + struct);
+            }
+        }
+    }
+
+    @Test
+    void listsOfStructsFanOut() {
+        Struct struct = Struct.newBuilder()
+                .putFields("site", Values.of("oslo"))
+                .putFields("readings", Values.of(List.of(
+                        Values.of(Struct.newBuilder()
+                                .putFields("value", Values.of(1))
+                                .putFields("meta", Values.of(Struct.newBuilder()
+                                        .putFields("unit", Values.of("C")).build()))
+                                .build()),
+                        Values.of(Struct.newBuilder().putFields("quality", Values.of("bad")).build()),
+                        Values.of(Struct.newBuilder()
+                                .putFields("value", Values.of(3))
+                                .putFields("meta", Values.of(Struct.newBuilder()
+                                        .putFields("unit", Values.of("F")).build()))
+                                .build()))))
+                .build();
+        FlatStruct flat = FlatStruct.index(struct);
+
+        assertEquals(List.of("1.0", "3.0"), flat.getStrings("readings.value"));
+        assertEquals(List.of("C", "F"), flat.getStrings("readings.meta.unit"));
+        assertEquals(List.of("bad"), flat.getStrings("readings.quality"));
+        assertEquals(3, flat.get("readings").size());
+        assertEquals(1.0, flat.getFirst("readings.value").orElseThrow().getNumberValue(), 0.0);
+        assertEquals(List.of("site", "readings", "readings.value", "readings.meta", "readings.meta.unit",
+                "readings.quality"), flat.getPaths());
+    }
+
+    @Test
+    void nullsAreSkipped() {
+        Struct struct = Struct.newBuilder()
+                .putFields("nothing", Values.ofNull())
+                .putFields("list", Values.of(List.of(Values.of("a"), Values.ofNull(), Values.of("b"))))
+                .putFields("empty", Values.of(List.of()))
+                .putFields("nested", Values.of(Struct.newBuilder().putFields("nothing", Values.ofNull()).build()))
+                .build();
+        FlatStruct flat = FlatStruct.index(struct);
+
+        assertFalse(flat.contains("nothing"));
+        assertTrue(flat.get("nothing").isEmpty());
+        assertTrue(flat.getFirst("nothing").isEmpty());
+        assertEquals(List.of("a", "b"), flat.getStrings("list"));
+        assertFalse(flat.contains("empty"));
+        assertTrue(flat.contains("nested"));
+        assertFalse(flat.contains("nested.nothing"));
+        for (String path : List.of("nothing", "list", "empty", "nested", "nested.nothing")) {
+            assertEquals(ParseStruct.parseStringList(struct, Arrays.asList(path.split("\\."))),
+                    flat.getStrings(path), path);
+        }
+    }
+
+    @Test
+    void nestedLists() {
+        Value inner = Values.of(List.of(Values.of("b"), Values.of("c")));
+        Struct struct = Struct.newBuilder()
+                .putFields("leaf", Values.of(List.of(Values.of("a"), inner)))
+                .putFields("through", Values.of(List.of(
+                        Values.of(List.of(Values.of(Struct.newBuilder().putFields("x", Values.of("1")).build()))),
+                        Values.of(Struct.newBuilder().putFields("x", Values.of("2")).build()))))
+                .build();
+        FlatStruct flat = FlatStruct.index(struct);
+
+        // A path through nested lists fans out over all levels, like ParseStruct.
+        assertEquals(List.of("1", "2"), flat.getStrings("through.x"));
+        assertEquals(ParseStruct.parseStringList(struct, List.of("through", "x")), flat.getStrings("through.x"));
+
+        // At the end of the path, ParseStruct returns the string form of an inner list, FlatStruct its elements.
+        assertEquals(List.of("a", "b", "c"), flat.getStrings("leaf"));
+        assertEquals(List.of("a", ParseValue.parseString(inner)), ParseStruct.parseStringList(struct, List.of("leaf")));
+    }
+
+    @Test
+    void hashCollisions() {
+        // "Aa" and "BB" have the same hash code, so all these keys collide.
+        List<String> colliding = List.of("AaAa", "AaBB", "BBAa");
+        assertEquals("BBBB".hashCode(), "AaAa".hashCode());
+        Struct.Builder builder = Struct.newBuilder();
+        for (int i = 0; i < colliding.size(); i++) {
+            builder.putFields(colliding.get(i), Values.of(Struct.newBuilder()
+                    .putFields("AaAa", Values.of("child" + i))
+                    .build()));
+        }
+        FlatStruct flat = FlatStruct.index(builder.build());
+
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(1, flat.get(colliding.get(i)).size(), colliding.get(i));
+            assertEquals(List.of("child" + i), flat.getStrings(colliding.get(i) + ".AaAa"));
+        }
+        // A missing key in the same probe sequence.
+        assertFalse(flat.contains("BBBB"));
+        assertTrue(flat.getStrings("BBBB.AaAa").isEmpty());
+        assertEquals(6, flat.getPaths().size());
+    }
+
+    @Test
+    void largeAndEmptyStructs() {
+        Struct.Builder builder = Struct.newBuilder();
+        for (int i = 0; i < 5_000; i++) {
+            builder.putFields("field" + i, Values.of(i));
+        }
+        FlatStruct flat = FlatStruct.index(builder.build());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(List.of(i + ".0"), flat.getStrings("field" + i));
+        }
+        assertFalse(flat.contains("field5000"));
+
+        FlatStruct empty = FlatStruct.index(Struct.getDefaultInstance());
+        assertTrue(empty.getPaths().isEmpty());
+        assertFalse(empty.contains("a"));
+    }
+
+    /*
+    A random tree over the field names a, b and c, with nulls, scalars, structs and lists of those. Lists are not
+    nested directly in lists; see nestedLists().
+     */
+    private static Struct randomStruct(Random random, int depth) {
+        Struct.Builder builder = Struct.newBuilder();
+        for (String name : List.of("a", "b", "c")) {
+            if (random.nextInt(4) > 0) {
+                builder.putFields(name, randomValue(random, depth + 1, true));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Value randomValue(Random random, int depth, boolean allowList) {
+        int kind = depth > 4 ? random.nextInt(3) : random.nextInt(allowList ? 6 : 4);
+        return switch (kind) {
+            case 0 -> Values.of("s" + random.nextInt(100));
+            case 1 -> Values.of(random.nextInt(100));
+            case 2 -> Values.ofNull();
+            case 3 -> Values.of(randomStruct(random, depth));
+            default -> {
+                List<Value> elements = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    elements.add(randomValue(random, depth + 1, false));
+                }
+                yield Values.of(elements);
+            }
+        };
+    }
+}
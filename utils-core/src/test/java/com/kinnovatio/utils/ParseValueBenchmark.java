@@ -0,0 +1,107 @@
+package com.kinnovatio.utils;
+
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throwing {@link ParseValue} methods with their non-throwing {@code tryParse} counterparts on
+ * string-encoded sensor values, with a configurable share of malformed values.
+ *
+ * Run from the {@code utils-core} folder:
+ * <pre>{@code
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark=ParseValueBenchmark
+ * }</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseValueBenchmark {
+    private static final int NO_VALUES = 1024;
+
+    @Param({"0", "5", "50"})
+    int malformedPercent;
+
+    Value[] longValues;
+    Value[] doubleValues;
+    final ParsedValue parsed = new ParsedValue();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        longValues = new Value[NO_VALUES];
+        doubleValues = new Value[NO_VALUES];
+        for (int i = 0; i < NO_VALUES; i++) {
+            boolean malformed = random.nextInt(100) < malformedPercent;
+            longValues[i] = Values.of(malformed ? "n/a" : String.valueOf(random.nextLong(1_000_000_000_000L)));
+            doubleValues[i] = Values.of(malformed ? "#ERR" : String.format(Locale.ROOT, "%.4f", random.nextDouble() * 1000));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NO_VALUES)
+    public void parseLong(Blackhole blackhole) {
+        for (Value value : longValues) {
+            try {
+                blackhole.consume(ParseValue.parseLong(value));
+            } catch (NumberFormatException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NO_VALUES)
+    public void tryParseLong(Blackhole blackhole) {
+        for (Value value : longValues) {
+            if (ParseValue.tryParseLong(value, parsed)) {
+                blackhole.consume(parsed.getLong());
+            } else {
+                blackhole.consume(parsed.getStatus());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NO_VALUES)
+    public void parseDouble(Blackhole blackhole) {
+        for (Value value : doubleValues) {
+            try {
+                blackhole.consume(ParseValue.parseDouble(value));
+            } catch (NumberFormatException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NO_VALUES)
+    public void tryParseDouble(Blackhole blackhole) {
+        for (Value value : doubleValues) {
+            if (ParseValue.tryParseDouble(value, parsed)) {
+                blackhole.consume(parsed.getDouble());
+            } else {
+                blackhole.consume(parsed.getStatus());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ParseValueBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
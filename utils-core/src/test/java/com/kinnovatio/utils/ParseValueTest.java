@@ -0,0 +1,155 @@
+package com.kinnovatio.utils;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParseValueTest {
+    private final ParsedValue parsed = new ParsedValue();
+
+    @Test
+    void tryParseLongRange() {
+        assertLong(Long.MAX_VALUE, "9223372036854775807");
+        assertLong(Long.MIN_VALUE, "-9223372036854775808");
+        assertLong(0L, "-0");
+        assertLong(42L, "+42");
+        assertLong(7L, "0007");
+
+        for (String overflow : List.of("9223372036854775808", "-9223372036854775809",
+                "99999999999999999999", "-99999999999999999999")) {
+            assertFalse(ParseValue.tryParseLong(Values.of(overflow), parsed), overflow);
+            assertEquals(ParsedValue.Status.OUT_OF_RANGE, parsed.getStatus(), overflow);
+        }
+        // Malformed input is reported as such, even if the digits before it overflow.
+        assertFalse(ParseValue.tryParseLong(Values.of("99999999999999999999x"), parsed));
+        assertEquals(ParsedValue.Status.INVALID_FORMAT, parsed.getStatus());
+    }
+
+    @Test
+    void tryParseLongMatchesParseLong() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long expected = i % 2 == 0 ? random.nextLong() : random.nextInt(1_000_000) - 500_000;
+            Value value = Values.of(Long.toString(expected));
+            assertTrue(ParseValue.tryParseLong(value, parsed), value.getStringValue());
+            assertEquals(ParseValue.parseLong(value), parsed.getLong());
+        }
+
+        // Numbers are rounded, like parseLong().
+        assertLong(ParseValue.parseLong(Values.of(2.5)), Values.of(2.5));
+        assertLong(ParseValue.parseLong(Values.of(-2.5)), Values.of(-2.5));
+    }
+
+    @Test
+    void tryParseLongWhitespaceAndFormat() {
+        // Unlike Long.parseLong(), surrounding whitespace is ignored.
+        assertThrows(NumberFormatException.class, () -> ParseValue.parseLong(Values.of(" 42\t")));
+        assertLong(42L, " 42\t");
+        assertLong(-42L, "\n-42 ");
+
+        for (String invalid : List.of("", "   ", "-", "+", "4 2", "- 42", "42L", "4.0", "1e3", "0x10", "--1")) {
+            assertFalse(ParseValue.tryParseLong(Values.of(invalid), parsed), "'" + invalid + "'");
+            assertEquals(ParsedValue.Status.INVALID_FORMAT, parsed.getStatus(), "'" + invalid + "'");
+        }
+        assertFalse(ParseValue.tryParseLong(Values.of(true), parsed));
+        assertEquals(ParsedValue.Status.INVALID_TYPE, parsed.getStatus());
+        assertFalse(ParseValue.tryParseLong(Values.of(Struct.getDefaultInstance()), parsed));
+        assertEquals(ParsedValue.Status.INVALID_TYPE, parsed.getStatus());
+    }
+
+    @Test
+    void tryParseDoubleFastPathLimits() {
+        // At the limits of the exact fast path: 15 significant digits and a decimal exponent of +/- 22.
+        for (String input : List.of("123456789012345", "1.23456789012345", "123456789012345e7",
+                "1e22", "1e-22", "9.99999999999999e22", "0.000000000000000000000123456789012345",
+                "-0.5", "+0.5", ".5", "5.", "0.1", "0.3", "3.14159", "1E5", "1e+5", "000123.4500")) {
+            assertDouble(input);
+        }
+        // Just outside the fast path, delegated to Double.parseDouble().
+        for (String input : List.of("1234567890123456", "1.234567890123456", "1e23", "1e-23",
+                "123456789012345e8", "12345678901234567890123", "0.1234567890123456789", "1.7976931348623157e308",
+                "4.9e-324", "1e309", "1e-400", "2.2250738585072011e-308", "1e100000", "1e-100000")) {
+            assertDouble(input);
+        }
+    }
+
+    @Test
+    void tryParseDoubleMatchesParseDouble() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double value = switch (i % 4) {
+                case 0 -> random.nextDouble() * 1000;
+                case 1 -> Double.longBitsToDouble(random.nextLong());
+                case 2 -> random.nextInt(1_000_000) / 100d;
+                default -> -random.nextGaussian();
+            };
+            assertDouble(Double.toString(value));
+            assertDouble(String.format(Locale.ROOT, "%.4f", value));
+            assertDouble(String.format(Locale.ROOT, "%.15e", value));
+        }
+    }
+
+    @Test
+    void tryParseDoubleSpecialValues() {
+        assertDouble("NaN");
+        assertDouble("-NaN");
+        assertDouble("Infinity");
+        assertDouble("+Infinity");
+        assertDouble("-Infinity");
+        assertDouble("-0");
+        assertDouble("-0.0e10");
+        assertDouble(" 1.5\t");
+
+        for (String invalid : List.of("", " ", "-", ".", "e5", "1e", "1e+", "1.2.3", "1,5", "0x1p3", "1.0d",
+                "nan", "inf", "Infinityx", "NaN1", "1 2")) {
+            assertFalse(ParseValue.tryParseDouble(Values.of(invalid), parsed), "'" + invalid + "'");
+            assertEquals(ParsedValue.Status.INVALID_FORMAT, parsed.getStatus(), "'" + invalid + "'");
+        }
+        assertTrue(ParseValue.tryParseDouble(Values.of(Double.NaN), parsed));
+        assertEquals(Double.NaN, parsed.getDouble());
+        assertFalse(ParseValue.tryParseDouble(Values.ofNull(), parsed));
+        assertEquals(ParsedValue.Status.INVALID_TYPE, parsed.getStatus());
+    }
+
+    @Test
+    void tryParseBooleanMatchesParseBoolean() throws Exception {
+        for (Value value : List.of(Values.of(true), Values.of(false), Values.of("true"), Values.of("TRUE"),
+                Values.of("false"), Values.of("yes"), Values.of(""), Values.of(" true"),
+                Values.of(1), Values.of(1.0), Values.of(0), Values.of(2), Values.of(Double.NaN))) {
+            assertTrue(ParseValue.tryParseBoolean(value, parsed), value.toString());
+            assertEquals(ParseValue.parseBoolean(value), parsed.getBoolean(), value.toString());
+        }
+        for (Value value : List.of(Values.ofNull(), Values.of(Struct.getDefaultInstance()))) {
+            assertFalse(ParseValue.tryParseBoolean(value, parsed), value.toString());
+            assertEquals(ParsedValue.Status.INVALID_TYPE, parsed.getStatus());
+            assertThrows(Exception.class, () -> ParseValue.parseBoolean(value));
+        }
+    }
+
+    private void assertLong(long expected, String input) {
+        assertLong(expected, Values.of(input));
+    }
+
+    private void assertLong(long expected, Value input) {
+        assertTrue(ParseValue.tryParseLong(input, parsed), input.toString());
+        assertEquals(expected, parsed.getLong(), input.toString());
+    }
+
+    /*
+    Checks that the input parses to the exact same double as Double.parseDouble().
+     */
+    private void assertDouble(String input) {
+        assertTrue(ParseValue.tryParseDouble(Values.of(input), parsed), input);
+        assertEquals(Double.parseDouble(input), parsed.getDouble(), input);
+    }
+}
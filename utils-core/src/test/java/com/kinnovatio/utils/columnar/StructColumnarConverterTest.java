@@ -0,0 +1,178 @@
+package com.kinnovatio.utils.columnar;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructColumnarConverterTest {
+    private static final String[] QUALITIES = {"good", "bad", "uncertain", "substituted", "manual"};
+
+    private final StructColumnarConverter schema = StructColumnarConverter.create()
+            .withColumn("timestamp", "data.timestamp", ColumnType.LONG)
+            .withColumn("value", "data.value", ColumnType.DOUBLE)
+            .withColumn("valid", "data.valid", ColumnType.BOOLEAN)
+            .withColumn("quality", "data.quality", ColumnType.STRING)
+            .withColumn("missing", "data.missing", ColumnType.LONG)
+            .withColumn("alwaysNull", "alwaysNull", ColumnType.STRING);
+
+    @Test
+    void parallelConversionMatchesSequential() {
+        // Not a multiple of 64, and split into many 64-row aligned ranges.
+        List<Struct> records = records(1_000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ColumnarBatch parallel = schema.withSplitThreshold(64).withPool(pool).convert(records);
+            ColumnarBatch sequential = schema.withSplitThreshold(Integer.MAX_VALUE).convert(records);
+
+            assertEquals(1_000, parallel.getRowCount());
+            for (String name : List.of("timestamp", "missing")) {
+                assertTrue(Arrays.equals(sequential.getLongColumn(name).getValues(),
+                        parallel.getLongColumn(name).getValues()), name + " values");
+            }
+            assertTrue(Arrays.equals(sequential.getDoubleColumn("value").getValues(),
+                    parallel.getDoubleColumn("value").getValues()), "value values");
+            assertTrue(Arrays.equals(sequential.getBooleanColumn("valid").getValues(),
+                    parallel.getBooleanColumn("valid").getValues()), "valid values");
+            for (String name : List.of("quality", "alwaysNull")) {
+                assertEquals(sequential.getStringColumn(name).getDictionary(),
+                        parallel.getStringColumn(name).getDictionary(), name + " dictionary");
+                assertTrue(Arrays.equals(sequential.getStringColumn(name).getCodes(),
+                        parallel.getStringColumn(name).getCodes()), name + " codes");
+            }
+            for (Column column : sequential.getColumns()) {
+                Column other = parallel.getColumn(column.getName());
+                assertTrue(Arrays.equals(column.getNullBitmap(), other.getNullBitmap()),
+                        column.getName() + " null bitmap");
+                assertEquals(column.getInvalidCount(), other.getInvalidCount(), column.getName() + " invalid count");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void valuesNullsAndInvalidRows() {
+        List<Struct> records = records(1_000);
+        ColumnarBatch batch = schema.withSplitThreshold(64).withPool(new ForkJoinPool(4)).convert(records);
+
+        LongColumn timestamp = batch.getLongColumn("timestamp");
+        DoubleColumn value = batch.getDoubleColumn("value");
+        BooleanColumn valid = batch.getBooleanColumn("valid");
+        StringColumn quality = batch.getStringColumn("quality");
+        for (int row = 0; row < records.size(); row++) {
+            if (row % 7 == 0) {
+                // "n/a" cannot be parsed to a long: counted as invalid and null.
+                assertTrue(timestamp.isNull(row), "timestamp row " + row);
+            } else {
+                assertFalse(timestamp.isNull(row), "timestamp row " + row);
+                assertEquals(1_700_000_000_000L + row, timestamp.getLong(row));
+            }
+            if (row % 5 == 0) {
+                // NULL_VALUE is null, but not invalid.
+                assertTrue(value.isNull(row), "value row " + row);
+            } else {
+                assertEquals(row * 0.5, value.getDouble(row), 0.0);
+            }
+            assertEquals(row % 2 == 0, valid.getBoolean(row));
+            if (row % 11 == 0) {
+                assertTrue(quality.isNull(row), "quality row " + row);
+                assertEquals(-1, quality.getCode(row));
+            } else {
+                assertEquals(QUALITIES[row % QUALITIES.length], quality.getString(row));
+            }
+        }
+        assertEquals((records.size() + 6) / 7, timestamp.getInvalidCount());
+        assertEquals(0, value.getInvalidCount());
+        assertEquals(0, quality.getInvalidCount());
+
+        // Missing and all-null columns: every row is null, none is invalid.
+        for (String name : List.of("missing", "alwaysNull")) {
+            Column column = batch.getColumn(name);
+            for (int row = 0; row < records.size(); row++) {
+                assertTrue(column.isNull(row), name + " row " + row);
+            }
+            assertEquals(0, column.getInvalidCount());
+        }
+        assertTrue(batch.getStringColumn("alwaysNull").getDictionary().isEmpty());
+    }
+
+    @Test
+    void typeMismatchesAreInvalid() {
+        Struct record = Struct.newBuilder()
+                .putFields("long", Values.of("not a number"))
+                .putFields("double", Values.of(true))
+                // Any string parses as a boolean ("true" or not), so only a non-scalar is invalid.
+                .putFields("boolean", Values.of(Struct.getDefaultInstance()))
+                .putFields("struct", Values.of(Struct.newBuilder().putFields("a", Values.of(1)).build()))
+                .build();
+        ColumnarBatch batch = StructColumnarConverter.create()
+                .withColumn("long", "long", ColumnType.LONG)
+                .withColumn("double", "double", ColumnType.DOUBLE)
+                .withColumn("boolean", "boolean", ColumnType.BOOLEAN)
+                .withColumn("struct", "struct", ColumnType.LONG)
+                // The path goes through a non-struct node.
+                .withColumn("throughString", "long.child", ColumnType.LONG)
+                .convert(List.of(record));
+
+        for (String name : List.of("long", "double", "boolean", "struct")) {
+            assertTrue(batch.getColumn(name).isNull(0), name);
+            assertEquals(1, batch.getColumn(name).getInvalidCount(), name);
+        }
+        assertTrue(batch.getColumn("throughString").isNull(0));
+        assertEquals(0, batch.getColumn("throughString").getInvalidCount());
+    }
+
+    @Test
+    void dictionaryIsInFirstAppearanceOrder() {
+        List<Struct> records = new ArrayList<>();
+        for (int row = 0; row < 300; row++) {
+            // A new value every 50 rows, and a recurring first value, across range boundaries.
+            records.add(Struct.newBuilder().putFields("quality", Values.of(quality(row))).build());
+        }
+        StringColumn column = StructColumnarConverter.create()
+                .withColumn("quality", "quality", ColumnType.STRING)
+                .withSplitThreshold(64)
+                .withPool(new ForkJoinPool(4))
+                .convert(records)
+                .getStringColumn("quality");
+
+        assertEquals(List.of("q0", "q1", "q2", "q3", "q4", "q5"), column.getDictionary());
+        for (int row = 0; row < records.size(); row++) {
+            assertEquals(quality(row), column.getString(row));
+            assertEquals(Integer.parseInt(quality(row).substring(1)), column.getCode(row));
+        }
+    }
+
+    private static String quality(int row) {
+        return row % 3 == 0 ? "q0" : "q" + (row / 50);
+    }
+
+    private static List<Struct> records(int count) {
+        List<Struct> records = new ArrayList<>(count);
+        for (int row = 0; row < count; row++) {
+            Struct.Builder data = Struct.newBuilder()
+                    .putFields("timestamp", row % 7 == 0
+                            ? Values.of("n/a")
+                            : Values.of(String.valueOf(1_700_000_000_000L + row)))
+                    .putFields("value", row % 5 == 0 ? Values.ofNull() : Values.of(row * 0.5))
+                    .putFields("valid", Values.of(row % 2 == 0));
+            if (row % 11 != 0) {
+                data.putFields("quality", Values.of(QUALITIES[row % QUALITIES.length]));
+            }
+            records.add(Struct.newBuilder()
+                    .putFields("data", Values.of(data.build()))
+                    .putFields("alwaysNull", Values.ofNull())
+                    .build());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,339 @@
+package com.kinnovatio.utils.mapper;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.util.Values;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Runs the processor on fixture sources with the system Java compiler. The AutoValue processor is not on the test
+class path, so the fixtures include a hand-written AutoValue_ class with the shape AutoValue generates.
+ */
+class StructMapperProcessorTest {
+    private static final Struct STRUCT = Struct.newBuilder()
+            .putFields("id", Values.of("sensor-1"))
+            .putFields("data", Values.of(Struct.newBuilder()
+                    .putFields("timestamp", Values.of("1700000000000"))
+                    .putFields("value", Values.of(21.5))
+                    .putFields("count", Values.of(3))
+                    .putFields("valid", Values.of("true"))
+                    .putFields("tags", Values.of(List.of(Values.of("a"), Values.of("b"))))
+                    .build()))
+            .build();
+
+    @Test
+    void recordRoundTrip(@TempDir Path directory) throws Exception {
+        Compilation compilation = compile(directory, Map.of("fixture/Reading.java", """
+                package fixture;
+
+                import com.kinnovatio.utils.mapper.StructField;
+                import com.kinnovatio.utils.mapper.StructMapper;
+
+                @StructMapper
+                public record Reading(@StructField("id") String id,
+                                      @StructField("data.timestamp") long timestamp,
+                                      @StructField("data.value") double value,
+                                      @StructField("data.count") int count,
+                                      @StructField("data.valid") boolean valid,
+                                      @StructField("data.missing") Long missing,
+                                      @StructField("data.value") java.util.OptionalDouble optionalValue,
+                                      @StructField("data.missing") java.util.Optional<String> optionalMissing,
+                                      @StructField("data.tags") java.util.List<String> tags) {}
+                """));
+        assertTrue(compilation.errors().isEmpty(), compilation.errors().toString());
+
+        Object reading = compilation.map("fixture.ReadingStructMapper", STRUCT);
+        assertEquals("sensor-1", property(reading, "id"));
+        assertEquals(1_700_000_000_000L, property(reading, "timestamp"));
+        assertEquals(21.5, property(reading, "value"));
+        assertEquals(3, property(reading, "count"));
+        assertEquals(true, property(reading, "valid"));
+        assertEquals(null, property(reading, "missing"));
+        assertEquals(OptionalDouble.of(21.5), property(reading, "optionalValue"));
+        assertEquals(Optional.empty(), property(reading, "optionalMissing"));
+        assertEquals(List.of("a", "b"), property(reading, "tags"));
+    }
+
+    @Test
+    void autoValueInheritedPropertiesInPropertyOrder(@TempDir Path directory) throws Exception {
+        // The inherited property comes first in the AutoValue_ constructor. A wrong order does not compile.
+        Compilation compilation = compile(directory, Map.of(
+                "fixture/HasId.java", """
+                        package fixture;
+
+                        import com.kinnovatio.utils.mapper.StructField;
+
+                        public interface HasId {
+                            @StructField("id")
+                            String id();
+                        }
+                        """,
+                "fixture/Asset.java", """
+                        package fixture;
+
+                        import com.google.auto.value.AutoValue;
+                        import com.kinnovatio.utils.mapper.StructField;
+                        import com.kinnovatio.utils.mapper.StructMapper;
+
+                        @AutoValue
+                        @StructMapper
+                        public abstract class Asset implements HasId {
+                            @StructField("data.value")
+                            public abstract double value();
+
+                            public String describe() {
+                                return id() + "=" + value();
+                            }
+                        }
+                        """,
+                "fixture/AutoValue_Asset.java", """
+                        package fixture;
+
+                        final class AutoValue_Asset extends Asset {
+                            private final String id;
+                            private final double value;
+
+                            AutoValue_Asset(String id, double value) {
+                                this.id = id;
+                                this.value = value;
+                            }
+
+                            @Override
+                            public String id() {
+                                return id;
+                            }
+
+                            @Override
+                            public double value() {
+                                return value;
+                            }
+                        }
+                        """));
+        assertTrue(compilation.errors().isEmpty(), compilation.errors().toString());
+
+        Object asset = compilation.map("fixture.AssetStructMapper", STRUCT);
+        assertEquals("sensor-1=21.5", property(asset, "describe"));
+    }
+
+    @Test
+    void autoValueWithBuilder(@TempDir Path directory) throws Exception {
+        // The builder factory is private, so the mapper uses the generated builder.
+        Compilation compilation = compile(directory, Map.of(
+                "fixture/Sensor.java", """
+                        package fixture;
+
+                        import com.google.auto.value.AutoValue;
+                        import com.kinnovatio.utils.mapper.StructField;
+                        import com.kinnovatio.utils.mapper.StructMapper;
+
+                        @AutoValue
+                        @StructMapper
+                        public abstract class Sensor {
+                            private static Builder builder() {
+                                return new AutoValue_Sensor.Builder();
+                            }
+
+                            @StructField("id")
+                            public abstract String getId();
+                            @StructField("data.value")
+                            public abstract double getValue();
+
+                            abstract Builder toBuilder();
+
+                            @AutoValue.Builder
+                            abstract static class Builder {
+                                abstract Builder setId(String value);
+                                abstract Builder setValue(double value);
+                                abstract Sensor autoBuild();
+
+                                Sensor build() {
+                                    Sensor sensor = autoBuild();
+                                    if (sensor.getValue() < 0) {
+                                        throw new IllegalStateException("Negative value");
+                                    }
+                                    return sensor;
+                                }
+                            }
+                        }
+                        """,
+                "fixture/AutoValue_Sensor.java", """
+                        package fixture;
+
+                        final class AutoValue_Sensor extends Sensor {
+                            private final String id;
+                            private final double value;
+
+                            private AutoValue_Sensor(String id, double value) {
+                                this.id = id;
+                                this.value = value;
+                            }
+
+                            @Override
+                            public String getId() {
+                                return id;
+                            }
+
+                            @Override
+                            public double getValue() {
+                                return value;
+                            }
+
+                            @Override
+                            Sensor.Builder toBuilder() {
+                                return new Builder().setId(id).setValue(value);
+                            }
+
+                            static final class Builder extends Sensor.Builder {
+                                private String id;
+                                private double value;
+
+                                Builder() {
+                                }
+
+                                @Override
+                                Sensor.Builder setId(String id) {
+                                    this.id = id;
+                                    return this;
+                                }
+
+                                @Override
+                                Sensor.Builder setValue(double value) {
+                                    this.value = value;
+                                    return this;
+                                }
+
+                                @Override
+                                Sensor autoBuild() {
+                                    return new AutoValue_Sensor(id, value);
+                                }
+                            }
+                        }
+                        """));
+        assertTrue(compilation.errors().isEmpty(), compilation.errors().toString());
+        String mapper = Files.readString(directory.resolve("generated/fixture/SensorStructMapper.java"));
+        assertTrue(mapper.contains("new AutoValue_Sensor.Builder()"), mapper);
+        assertTrue(mapper.contains(".build()"), mapper);
+
+        Object sensor = compilation.map("fixture.SensorStructMapper", STRUCT);
+        assertEquals("sensor-1", property(sensor, "getId"));
+        assertEquals(21.5, property(sensor, "getValue"));
+    }
+
+    @Test
+    void errorDiagnostics(@TempDir Path directory) throws Exception {
+        assertError(directory.resolve("missing"), """
+                @StructMapper
+                public record Fixture(@StructField("id") String id, long timestamp) {}
+                """, "must be annotated with @StructField");
+        assertError(directory.resolve("type"), """
+                @StructMapper
+                public record Fixture(@StructField("id") java.util.Date id) {}
+                """, "Unsupported @StructField type");
+        assertError(directory.resolve("path"), """
+                @StructMapper
+                public record Fixture(@StructField("data..id") String id) {}
+                """, "Invalid @StructField path");
+        assertError(directory.resolve("class"), """
+                @StructMapper
+                public class Fixture {}
+                """, "can only be applied to records and @AutoValue classes");
+        assertError(directory.resolve("setter"), """
+                @com.google.auto.value.AutoValue
+                @StructMapper
+                public abstract class Fixture {
+                    @StructField("id")
+                    public abstract String id();
+                    @StructField("name")
+                    public abstract String name();
+
+                    @com.google.auto.value.AutoValue.Builder
+                    abstract static class Builder {
+                        abstract Builder id(String id);
+                        abstract Fixture build();
+                    }
+                }
+                """, "No setter for the property");
+    }
+
+    private static void assertError(Path directory, String body, String message) throws IOException {
+        Compilation compilation = compile(directory, Map.of("fixture/Fixture.java", """
+                package fixture;
+
+                import com.kinnovatio.utils.mapper.StructField;
+                import com.kinnovatio.utils.mapper.StructMapper;
+
+                """ + body));
+        assertTrue(compilation.errors().stream().anyMatch(error -> error.contains(message)),
+                message + " not in " + compilation.errors());
+    }
+
+    /*
+    Calls the accessor through the public fixture type, as the AutoValue_ class is package-private.
+     */
+    private static Object property(Object instance, String accessor) throws Exception {
+        Class<?> type = instance.getClass();
+        while (!Modifier.isPublic(type.getModifiers())) {
+            type = type.getSuperclass();
+        }
+        return type.getMethod(accessor).invoke(instance);
+    }
+
+    private static Compilation compile(Path directory, Map<String, String> sources) throws IOException {
+        Path sourceDirectory = directory.resolve("src");
+        Path generatedDirectory = Files.createDirectories(directory.resolve("generated"));
+        Path classDirectory = Files.createDirectories(directory.resolve("classes"));
+        List<Path> files = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Path file = sourceDirectory.resolve(source.getKey());
+            Files.createDirectories(file.getParent());
+            files.add(Files.writeString(file, source.getValue()));
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-classpath", System.getProperty("java.class.path"), "-proc:full",
+                            "-d", classDirectory.toString(), "-s", generatedDirectory.toString()),
+                    null, fileManager.getJavaFileObjectsFromPaths(files));
+            task.setProcessors(List.of(new StructMapperProcessor()));
+            task.call();
+        }
+        List<String> errors = diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(null))
+                .collect(Collectors.toList());
+        return new Compilation(classDirectory, errors);
+    }
+
+    private record Compilation(Path classDirectory, List<String> errors) {
+        Object map(String mapperName, Struct struct) throws Exception {
+            try (URLClassLoader loader = new URLClassLoader(new URL[] {classDirectory.toUri().toURL()},
+                    StructMapperProcessorTest.class.getClassLoader())) {
+                return loader.loadClass(mapperName).getMethod("map", Struct.class).invoke(null, struct);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.kinnovatio.utils.path;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.google.protobuf.util.Values;
+import com.kinnovatio.utils.ParseStruct;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructPathTest {
+    /*
+    {
+      "site": "oslo",
+      "readings": [
+        {"value": 12.5, "quality": "good", "tags": ["a", "b"]},
+        {"value": "7", "quality": "bad"},
+        {"value": 30, "quality": "good", "flag": true},
+        {"value": null, "quality": null}
+      ],
+      "meta": {"owner": {"name": "ops"}, "count": 4}
+    }
+     */
+    private static final Struct STRUCT = Struct.newBuilder()
+            .putFields("site", Values.of("oslo"))
+            .putFields("readings", Values.of(List.of(
+                    Values.of(Struct.newBuilder()
+                            .putFields("value", Values.of(12.5))
+                            .putFields("quality", Values.of("good"))
+                            .putFields("tags", Values.of(List.of(Values.of("a"), Values.of("b"))))
+                            .build()),
+                    Values.of(Struct.newBuilder()
+                            .putFields("value", Values.of("7"))
+                            .putFields("quality", Values.of("bad"))
+                            .build()),
+                    Values.of(Struct.newBuilder()
+                            .putFields("value", Values.of(30))
+                            .putFields("quality", Values.of("good"))
+                            .putFields("flag", Values.of(true))
+                            .build()),
+                    Values.of(Struct.newBuilder()
+                            .putFields("value", Values.ofNull())
+                            .putFields("quality", Values.ofNull())
+                            .build()))))
+            .putFields("meta", Values.of(Struct.newBuilder()
+                    .putFields("owner", Values.of(Struct.newBuilder().putFields("name", Values.of("ops")).build()))
+                    .putFields("count", Values.of(4))
+                    .build()))
+            .build();
+
+    @Test
+    void dottedPathsMatchParseStruct() {
+        for (String path : List.of("site", "readings", "readings.value", "readings.quality", "readings.tags",
+                "meta.owner.name", "meta.count", "meta", "missing", "missing.child", "site.child",
+                "readings.value.child")) {
+            assertEquals(ParseStruct.parseStringList(STRUCT, Arrays.asList(path.split("\\."))),
+                    StructPath.compile(path).evaluateStrings(STRUCT), path);
+        }
+        assertEquals(List.of("12.5", "7", "30.0"), StructPath.compile("readings.value").evaluateStrings(STRUCT));
+        assertEquals(List.of("a", "b"), StructPath.compile("readings.tags").evaluateStrings(STRUCT));
+    }
+
+    @Test
+    void randomNestedStructsMatchParseStruct() {
+        Random random = new Random(42);
+        List<List<String>> paths = List.of(List.of("a"), List.of("a", "b"), List.of("a", "b", "c"),
+                List.of("b", "a"), List.of("c", "c", "c"), List.of("a", "a", "a", "a"));
+        for (int i = 0; i < 500; i++) {
+            Struct struct = randomStruct(random, 0);
+            for (List<String> path : paths) {
+                assertEquals(ParseStruct.parseStringList(struct, path),
+                        StructPath.compile(String.join(".", path)).evaluateStrings(struct), path + " in " + struct);
+            }
+        }
+    }
+
+    @Test
+    void wildcardsIndicesAndSlices() {
+        assertEquals(List.of("good", "bad", "good"), strings("readings[*].quality"));
+        assertEquals(2, StructPath.compile("meta.*").evaluate(STRUCT).size());
+        assertEquals(List.of("ops"), strings("meta.*..*"));
+        assertEquals(3, StructPath.compile("*").evaluate(STRUCT).size());
+
+        assertEquals(List.of("12.5"), strings("readings[0].value"));
+        assertEquals(List.of("b"), strings("readings[0].tags[1]"));
+        assertEquals(List.of("b"), strings("readings[0].tags[-1]"));
+        assertEquals(List.of(), strings("readings[4].value"));
+        assertEquals(List.of(), strings("readings[-5].value"));
+        assertEquals(List.of(), strings("site[0]"));
+        // The selected null is a match, but evaluateStrings() skips nulls like ParseStruct.
+        assertEquals(1, StructPath.compile("readings[-1].quality").evaluate(STRUCT).size());
+        assertEquals(List.of(), strings("readings[-1].quality"));
+
+        assertEquals(List.of("bad", "good"), strings("readings[1:3].quality"));
+        assertEquals(List.of("good"), strings("readings[-2:].quality"));
+        assertEquals(List.of("good"), strings("readings[:1].quality"));
+        assertEquals(List.of("good", "bad", "good"), strings("readings[ : ].quality"));
+        assertEquals(List.of(), strings("readings[3:1].quality"));
+        assertEquals(List.of("good", "bad", "good"), strings("readings[-10:10].quality"));
+    }
+
+    @Test
+    void rootMarkerQuotedNamesAndRecursiveDescent() {
+        assertEquals(List.of("ops"), strings("$['meta'][\"owner\"].name"));
+        assertEquals(List.of("ops"), strings("$.meta.owner['name']"));
+        assertEquals(List.of("ops"), strings("$..name"));
+        assertEquals(List.of("12.5", "7", "30.0"), strings("..value"));
+        assertEquals(List.of("ops"), strings("..[?(@.name == 'ops')].name"));
+
+        Struct quoted = Struct.newBuilder().putFields("a.b [x]", Values.of("dotted")).build();
+        assertEquals(List.of("dotted"), StructPath.compile("['a.b [x]']").evaluateStrings(quoted));
+        Struct escaped = Struct.newBuilder().putFields("it's", Values.of("quoted")).build();
+        assertEquals(List.of("quoted"), StructPath.compile("['it\\'s']").evaluateStrings(escaped));
+    }
+
+    @Test
+    void filters() {
+        // Values are coerced to the type of the literal: "7" compares as a number.
+        assertEquals(List.of("good", "good"), strings("readings[?(@.value > 10)].quality"));
+        assertEquals(List.of("bad"), strings("readings[?(@.value < 10)].quality"));
+        assertEquals(List.of("7"), strings("readings[?(@.value >= 7 && @.quality == 'bad')].value"));
+        assertEquals(List.of("12.5", "30.0"), strings("readings[?(@.quality == 'good' || @.flag)].value"));
+        assertEquals(List.of("30.0"), strings("readings[?(@.flag == true)].value"));
+        assertEquals(List.of("bad", "good"),
+                strings("readings[?((@.value < 10 || @.value > 20) && @.quality)].quality"));
+        assertEquals(List.of("12.5", "7"), strings("readings[?(@.value <= 12.5 && !@.flag)].value"));
+        assertEquals(List.of("12.5"), strings("readings[?(@['tags'])].value"));
+        assertEquals(List.of("12.5"), strings("readings[?(@.value == 1.25e1)].value"));
+
+        // Nulls: existence is false, == null matches, and other comparisons with a null value only match !=.
+        assertEquals(1, StructPath.compile("readings[?(!@.quality)]").evaluate(STRUCT).size());
+        assertEquals(1, StructPath.compile("readings[?(@.quality == null)]").evaluate(STRUCT).size());
+        assertEquals(3, StructPath.compile("readings[?(@.quality != null)]").evaluate(STRUCT).size());
+        assertEquals(4, StructPath.compile("readings[?(@.value != 'x')]").evaluate(STRUCT).size());
+        assertEquals(0, StructPath.compile("readings[?(@.missing == 'x')]").evaluate(STRUCT).size());
+        // A filter on a non-list node tests the node itself.
+        assertEquals(List.of("ops"), strings("meta.owner[?(@.name == 'ops')].name"));
+        assertEquals(List.of(), strings("meta.owner[?(@.name == 'dev')].name"));
+    }
+
+    @Test
+    void firstStopsAtTheFirstMatch() {
+        assertEquals("good", StructPath.compile("readings.quality").first(STRUCT).orElseThrow().getStringValue());
+        assertTrue(StructPath.compile("readings.missing").first(STRUCT).isEmpty());
+
+        List<Value> visited = new ArrayList<>();
+        StructPath.compile("readings[*]").forEach(STRUCT, visited::add);
+        assertEquals(4, visited.size());
+    }
+
+    @Test
+    void grammarErrors() {
+        for (String invalid : List.of("a b", "a.", "a..", "a.[0]", "a[", "a[0", "a[]", "a[x]", "a[1:x]",
+                "a['x", "a['x'", "a[?(@.x == 'y')", "a[?@.x]", "a[?(x)]", "a[?(@.x ==)]", "a[?(@.x == y)]",
+                "a[?(@.x && )]", "a[?((@.x)]", "a]")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> StructPath.compile(invalid), invalid);
+            assertTrue(e.getMessage().contains("at position"), e.getMessage());
+            // Invalid expressions are not cached.
+            assertThrows(IllegalArgumentException.class, () -> StructPath.compile(invalid), invalid);
+        }
+    }
+
+    @Test
+    void compiledExpressionsAreCached() {
+        StructPath hot = StructPath.compile("readings[?(@.quality == 'good')].value");
+        for (int i = 0; i < 5_000; i++) {
+            StructPath.compile("dynamic" + i + ".value");
+            // Kept in the cache while it is in use, even when more than the cache size of expressions is compiled.
+            assertSame(hot, StructPath.compile("readings[?(@.quality == 'good')].value"));
+        }
+        assertEquals("readings[?(@.quality == 'good')].value", hot.getExpression());
+    }
+
+    private static List<String> strings(String expression) {
+        return StructPath.compile(expression).evaluateStrings(STRUCT);
+    }
+
+    /*
+    A random tree over the field names a, b and c, with nested lists, nulls and scalar leaves.
+     */
+    private static Struct randomStruct(Random random, int depth) {
+        Struct.Builder builder = Struct.newBuilder();
+        for (String name : List.of("a", "b", "c")) {
+            if (random.nextInt(4) > 0) {
+                builder.putFields(name, randomValue(random, depth + 1));
+            }
+        }
+        return builder.build();
+    }
+
+    private static Value randomValue(Random random, int depth) {
+        int kind = depth > 4 ? random.nextInt(3) : random.nextInt(6);
+        return switch (kind) {
+            case 0 -> Values.of("s" + random.nextInt(100));
+            case 1 -> Values.of(random.nextInt(100));
+            case 2 -> Values.ofNull();
+            case 3 -> Values.of(randomStruct(random, depth));
+            default -> {
+                List<Value> elements = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    elements.add(randomValue(random, depth + 1));
+                }
+                yield Values.of(elements);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.kinnovatio.utils.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Tests the {@link MpscRingBuffer}.
+ */
+public class MpscRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new MpscRingBuffer<>(1).capacity());
+        assertEquals(8, new MpscRingBuffer<>(5).capacity());
+        assertEquals(8, new MpscRingBuffer<>(8).capacity());
+        assertEquals(1024, new MpscRingBuffer<>(1000).capacity());
+    }
+
+    @Test
+    void wrapsAroundTheCapacity() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+        for (int lap = 0; lap < 1_000; lap++) {
+            while (buffer.offer(next)) {
+                next++;
+            }
+            assertEquals(4, buffer.size());
+            assertFalse(buffer.offer(-1), "The buffer is full");
+            // Release a varying number of slots, so the head and tail wrap at different positions.
+            for (int i = 0; i <= lap % 4; i++) {
+                assertEquals(expected++, (int) buffer.poll());
+            }
+        }
+        List<Integer> rest = new ArrayList<>();
+        assertEquals(buffer.size(), buffer.drainTo(rest, Integer.MAX_VALUE));
+        for (int item : rest) {
+            assertEquals(expected++, item);
+        }
+        assertEquals(next, expected);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    void drainToRespectsMaxItems() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(16);
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+        }
+        List<Integer> target = new ArrayList<>();
+        assertEquals(4, buffer.drainTo(target, 4));
+        assertEquals(List.of(0, 1, 2, 3), target);
+        assertEquals(6, buffer.drainTo(target, 100));
+        assertEquals(0, buffer.drainTo(target, 100));
+        assertEquals(10, target.size());
+    }
+
+    @Test
+    void multipleProducersNoLossOrDuplication() throws Exception {
+        int producers = 4;
+        int itemsPerProducer = 50_000;
+        MpscRingBuffer<Long> buffer = new MpscRingBuffer<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long sequence = 0; sequence < itemsPerProducer; sequence++) {
+                    while (!buffer.offer(producer << 32 | sequence)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        // Each producer's items must arrive exactly once, in the order they were offered.
+        long[] nextSequence = new long[producers];
+        List<Long> drained = new ArrayList<>();
+        int received = 0;
+        start.countDown();
+        while (received < producers * itemsPerProducer) {
+            drained.clear();
+            received += buffer.drainTo(drained, 256);
+            for (long item : drained) {
+                int producer = (int) (item >>> 32);
+                if (nextSequence[producer]++ != (item & 0xFFFF_FFFFL)) {
+                    fail("Producer " + producer + ": expected " + (nextSequence[producer] - 1)
+                            + ", got " + (item & 0xFFFF_FFFFL));
+                }
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long sequence : nextSequence) {
+            assertEquals(itemsPerProducer, sequence);
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
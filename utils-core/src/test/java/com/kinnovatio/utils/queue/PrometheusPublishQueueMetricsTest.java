@@ -0,0 +1,179 @@
+package com.kinnovatio.utils.queue;
+
+import com.kinnovatio.utils.statestore.MemoryStateStore;
+import io.prometheus.metrics.model.registry.PrometheusRegistry;
+import io.prometheus.metrics.model.snapshots.CounterSnapshot;
+import io.prometheus.metrics.model.snapshots.GaugeSnapshot;
+import io.prometheus.metrics.model.snapshots.HistogramSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshot;
+import io.prometheus.metrics.model.snapshots.MetricSnapshots;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Tests the {@link PublishQueueStats} counters and their export via {@link PrometheusPublishQueueMetrics}.
+ */
+public class PrometheusPublishQueueMetricsTest {
+
+    @Test
+    void statsCountTheQueueActivity() {
+        PublishQueue<Integer> queue = newQueue(new FlakySink());
+        runQueue(queue);
+
+        PublishQueueStats stats = queue.getStats();
+        assertEquals(8L, stats.getEnqueuedItems());
+        assertEquals(2L, stats.getDroppedItems());
+        assertEquals(1L, stats.getFilteredItems());
+        assertEquals(4L, stats.getPublishedItems());
+        assertEquals(4L, stats.getDiscardedItems());
+        assertEquals(2L, stats.getRetries());
+        assertEquals(1L, stats.getThrottledCalls());
+        assertEquals(2L, stats.getFlushes(FlushReason.SIZE));
+        assertEquals(0L, stats.getFlushes(FlushReason.SHUTDOWN));
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    void registrySnapshotHoldsTheQueueMetrics() {
+        PrometheusRegistry registry = new PrometheusRegistry();
+        PrometheusPublishQueueMetrics metrics = PrometheusPublishQueueMetrics.of(registry, "orders");
+        PublishQueue<Integer> queue = newQueue(new FlakySink()).withMetrics(metrics);
+        runQueue(queue);
+
+        MetricSnapshots snapshots = registry.scrape();
+        assertEquals(0.0, gauge(snapshots, "publish_queue_depth", "orders"));
+        assertEquals(8.0, counter(snapshots, "publish_queue_items_enqueued", "orders"));
+        assertEquals(2.0, counter(snapshots, "publish_queue_items_dropped", "orders"));
+        assertEquals(1.0, counter(snapshots, "publish_queue_items_filtered", "orders"));
+        assertEquals(4.0, counter(snapshots, "publish_queue_items_published", "orders"));
+        assertEquals(4.0, counter(snapshots, "publish_queue_items_discarded", "orders"));
+        assertEquals(2.0, counter(snapshots, "publish_queue_sink_retries", "orders"));
+        assertEquals(1.0, counter(snapshots, "publish_queue_sink_throttled", "orders"));
+        assertEquals(2.0, counter(snapshots, "publish_queue_flushes", "orders", "size"));
+        assertEquals(0.0, counter(snapshots, "publish_queue_flushes", "orders", "time"));
+        HistogramSnapshot.HistogramDataPointSnapshot batchSize = histogram(snapshots, "publish_queue_batch_size",
+                "orders");
+        assertEquals(1L, batchSize.getCount());
+        assertEquals(4.0, batchSize.getSum());
+        assertEquals(1L, histogram(snapshots, "publish_queue_sink_latency_seconds", "orders").getCount());
+
+        // A second queue shares the metric families, with its own label.
+        PrometheusPublishQueueMetrics other = PrometheusPublishQueueMetrics.of(registry, "invoices");
+        PublishQueue<Integer> otherQueue = PublishQueue.<Integer>of(batch -> {}).withMetrics(other);
+        otherQueue.start();
+        otherQueue.put(1);
+        otherQueue.stop();
+        snapshots = registry.scrape();
+        assertEquals(1.0, counter(snapshots, "publish_queue_items_published", "invoices"));
+        assertEquals(4.0, counter(snapshots, "publish_queue_items_published", "orders"));
+
+        // Closing the hook removes the queue's metrics, but not those of the other queue.
+        metrics.close();
+        snapshots = registry.scrape();
+        assertFalse(hasQueue(snapshots, "publish_queue_items_published", "orders"));
+        assertFalse(hasQueue(snapshots, "publish_queue_depth", "orders"));
+        assertFalse(hasQueue(snapshots, "publish_queue_batch_size", "orders"));
+        assertEquals(1.0, counter(snapshots, "publish_queue_items_published", "invoices"));
+        metrics.close();
+    }
+
+    /*
+    Capacity 8 with the DROP policy and a max batch size of 4, and -1 inside the state of the state store.
+     */
+    private static PublishQueue<Integer> newQueue(PublishSink<Integer> sink) {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        stateStore.setLow("filtered", -5L);
+        stateStore.setHigh("filtered", -1L);
+        return PublishQueue.of(sink)
+                .withCapacity(8)
+                .withBackpressurePolicy(BackpressurePolicy.DROP)
+                .withMaxBatchSize(4)
+                .withMaxLinger(Duration.ofMinutes(10))
+                .withRetryPolicy(RetryPolicy.of(1).withInitialBackoff(Duration.ofMillis(1)))
+                .withStateStore(stateStore, item -> item < 0 ? "filtered" : "items", item -> item);
+    }
+
+    /*
+    Puts -1 (filtered) and 0 to 9 (8 enqueued, 2 dropped) before starting, so the batches are [0-3] and [4-7].
+     */
+    private static void runQueue(PublishQueue<Integer> queue) {
+        queue.put(-1);
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+        queue.start();
+        queue.stop();
+    }
+
+    private static double counter(MetricSnapshots snapshots, String name, String... labelValues) {
+        for (CounterSnapshot.CounterDataPointSnapshot dataPoint : ((CounterSnapshot) find(snapshots, name))
+                .getDataPoints()) {
+            if (labelValues[0].equals(dataPoint.getLabels().get("queue"))
+                    && (labelValues.length < 2 || labelValues[1].equals(dataPoint.getLabels().get("reason")))) {
+                return dataPoint.getValue();
+            }
+        }
+        throw new AssertionError("No data point of " + name + " for " + List.of(labelValues));
+    }
+
+    private static double gauge(MetricSnapshots snapshots, String name, String queue) {
+        for (GaugeSnapshot.GaugeDataPointSnapshot dataPoint : ((GaugeSnapshot) find(snapshots, name))
+                .getDataPoints()) {
+            if (queue.equals(dataPoint.getLabels().get("queue"))) {
+                return dataPoint.getValue();
+            }
+        }
+        throw new AssertionError("No data point of " + name + " for " + queue);
+    }
+
+    private static HistogramSnapshot.HistogramDataPointSnapshot histogram(MetricSnapshots snapshots, String name,
+                                                                          String queue) {
+        for (HistogramSnapshot.HistogramDataPointSnapshot dataPoint : ((HistogramSnapshot) find(snapshots, name))
+                .getDataPoints()) {
+            if (queue.equals(dataPoint.getLabels().get("queue"))) {
+                return dataPoint;
+            }
+        }
+        throw new AssertionError("No data point of " + name + " for " + queue);
+    }
+
+    private static boolean hasQueue(MetricSnapshots snapshots, String name, String queue) {
+        return find(snapshots, name).getDataPoints().stream()
+                .anyMatch(dataPoint -> queue.equals(dataPoint.getLabels().get("queue")));
+    }
+
+    private static MetricSnapshot find(MetricSnapshots snapshots, String name) {
+        List<String> names = new ArrayList<>();
+        for (MetricSnapshot snapshot : snapshots) {
+            if (snapshot.getMetadata().getName().equals(name)) {
+                return snapshot;
+            }
+            names.add(snapshot.getMetadata().getName());
+        }
+        throw new AssertionError(name + " not in " + names);
+    }
+
+    /*
+    Throttles the first call, and fails every call for the batch starting with 4.
+     */
+    private static final class FlakySink implements PublishSink<Integer> {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void publish(List<Integer> batch) throws Exception {
+            if (calls.incrementAndGet() == 1) {
+                throw new ThrottledException("429 Too Many Requests");
+            }
+            if (batch.getFirst() == 4) {
+                throw new IllegalStateException("503 Service Unavailable");
+            }
+        }
+    }
+}
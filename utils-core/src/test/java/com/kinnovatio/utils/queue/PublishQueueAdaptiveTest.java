@@ -0,0 +1,185 @@
+package com.kinnovatio.utils.queue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the adaptive concurrency, batch sizing and retries of {@link PublishQueue} against a simulated sink which
+ * injects latency and 429-style rejections.
+ */
+public class PublishQueueAdaptiveTest {
+
+    @Test
+    void adaptiveQueuePublishesAllItemsUnderThrottling() {
+        SimulatedSink sink = new SimulatedSink(Duration.ofMillis(2), 4, 0.0);
+        PublishQueue<String> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(200)
+                .withAdaptiveControl(AdaptiveControl.of(Duration.ofMillis(50)).withConcurrencyLimits(1, 32))
+                .withRetryPolicy(RetryPolicy.of(20)
+                        .withInitialBackoff(Duration.ofMillis(1))
+                        .withMaxBackoff(Duration.ofMillis(20)));
+        queue.start();
+        for (int i = 0; i < 50_000; i++) {
+            queue.put("item-" + i);
+        }
+        queue.stop();
+
+        assertEquals(50_000, sink.received.size());
+        assertEquals(50_000L, queue.getStats().getPublishedItems());
+        assertEquals(0L, queue.getStats().getDiscardedItems());
+        assertTrue(sink.maxObservedConcurrency.get() > 1, "The concurrency limit should increase");
+        // How many calls are throttled depends on the timing, but each of them is counted and retried.
+        assertEquals(sink.throttled.get(), queue.getStats().getThrottledCalls());
+        assertEquals(queue.getStats().getThrottledCalls(), queue.getStats().getRetries());
+    }
+
+    @Test
+    void failedBatchesAreRetriedAndThenDiscarded() {
+        SimulatedSink sink = new SimulatedSink(Duration.ZERO, Integer.MAX_VALUE, 1.0);
+        PublishQueue<String> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(10)
+                .withRetryPolicy(RetryPolicy.of(2).withInitialBackoff(Duration.ofMillis(1)));
+        queue.start();
+        for (int i = 0; i < 30; i++) {
+            queue.put("item-" + i);
+        }
+        queue.stop();
+
+        // The batching depends on the timing, but each batch is tried once and retried twice before it is discarded.
+        long batches = 0L;
+        for (FlushReason reason : FlushReason.values()) {
+            batches += queue.getStats().getFlushes(reason);
+        }
+        assertEquals(0, sink.received.size());
+        assertEquals(30L, queue.getStats().getDiscardedItems());
+        assertEquals(0L, queue.getStats().getPublishedItems());
+        assertEquals(2 * batches, queue.getStats().getRetries());
+        assertEquals(3 * batches, sink.calls.get());
+    }
+
+    @Test
+    void concurrentDurablePublishingAcknowledgesAllBatches(@TempDir Path directory) {
+        SimulatedSink sink = new SimulatedSink(Duration.ofMillis(3), Integer.MAX_VALUE, 0.0);
+        PublishQueue<String> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(50)
+                .withMaxConcurrency(8)
+                .withDurableStorage(directory, ItemCodec.utf8());
+        queue.start();
+        for (int i = 0; i < 10_000; i++) {
+            queue.put("item-" + i);
+        }
+        queue.stop();
+
+        assertEquals(10_000, sink.received.size());
+        try (SegmentLog log = SegmentLog.open(directory, PublishQueue.DEFAULT_SEGMENT_BYTES)) {
+            assertEquals(log.getEndOffset(), log.getAcknowledgedOffset());
+        }
+    }
+
+    @Test
+    void controllerFollowsLatencyAndRejections() {
+        AdaptiveControl control = AdaptiveControl.of(Duration.ofMillis(10))
+                .withConcurrencyLimits(2, 16)
+                .withMinBatchSize(10);
+        AdaptiveController controller = AdaptiveController.adaptive(control, 1_000);
+        assertEquals(2, controller.getLimit());
+        assertEquals(1_000, controller.getBatchSize());
+
+        // Fast calls at full utilization raise the limit.
+        for (int i = 0; i < 1_000; i++) {
+            int limit = controller.getLimit();
+            for (int j = 0; j < limit; j++) {
+                controller.acquire();
+            }
+            for (int j = 0; j < limit; j++) {
+                controller.onSuccess(Duration.ofMillis(1).toNanos());
+                controller.release();
+            }
+        }
+        assertEquals(16, controller.getLimit());
+
+        controller.onThrottled();
+        assertEquals(8, controller.getLimit());
+        assertEquals(500, controller.getBatchSize());
+
+        // Slow calls shrink the batch size down to the minimum.
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(Duration.ofMillis(100).toNanos());
+        }
+        assertEquals(2, controller.getLimit());
+        assertEquals(10, controller.getBatchSize());
+    }
+
+    @Test
+    void ackTrackerAcknowledgesContiguousPrefix() {
+        List<Long> acknowledged = new ArrayList<>();
+        AckTracker tracker = new AckTracker(acknowledged::add);
+        AckTracker.Pending first = tracker.register(100L);
+        AckTracker.Pending second = tracker.register(200L);
+        AckTracker.Pending third = tracker.register(300L);
+
+        tracker.complete(second);
+        tracker.complete(third);
+        assertEquals(List.of(), acknowledged);
+
+        tracker.complete(first);
+        assertEquals(List.of(300L), acknowledged);
+        assertEquals(0, tracker.size());
+    }
+
+    /*
+    A sink which takes a fixed latency per call, rejects calls above its concurrency capacity and fails a share
+    of the calls.
+     */
+    private static final class SimulatedSink implements PublishSink<String> {
+        final Set<String> received = ConcurrentHashMap.newKeySet();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger throttled = new AtomicInteger();
+        final AtomicInteger maxObservedConcurrency = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final long latencyNanos;
+        private final int capacity;
+        private final double failureRate;
+
+        SimulatedSink(Duration latency, int capacity, double failureRate) {
+            this.latencyNanos = latency.toNanos();
+            this.capacity = capacity;
+            this.failureRate = failureRate;
+        }
+
+        @Override
+        public void publish(List<String> batch) throws Exception {
+            calls.incrementAndGet();
+            int concurrency = inFlight.incrementAndGet();
+            try {
+                maxObservedConcurrency.accumulateAndGet(concurrency, Math::max);
+                if (concurrency > capacity) {
+                    throttled.incrementAndGet();
+                    throw new ThrottledException("429 Too Many Requests");
+                }
+                if (latencyNanos > 0) {
+                    LockSupport.parkNanos(latencyNanos);
+                }
+                if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                    throw new IllegalStateException("503 Service Unavailable");
+                }
+                received.addAll(batch);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
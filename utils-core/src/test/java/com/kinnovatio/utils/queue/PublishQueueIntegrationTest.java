@@ -1,5 +1,240 @@
 package com.kinnovatio.utils.queue;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test for {@link PublishQueue} against an in-process sink.
+ *
+ * Each scenario (a producer count and an item size) runs in two phases:
+ * <ul>
+ *     <li>Saturated: the producers add items as fast as they can. Measures the throughput, from the first
+ *     {@code put()} until {@code stop()} has returned, i.e. until every item has been acknowledged by the sink.</li>
+ *     <li>Paced: the producers add items at a fixed total rate. Measures the enqueue-to-ack latency. The latency is
+ *     measured from the intended send time of an item, so a stalled producer does not hide the stall from the
+ *     histogram (coordinated omission).</li>
+ * </ul>
+ * The results are written to {@code target/publish-queue-load-test.properties}. If a baseline exists in
+ * {@code src/test/resources/publish-queue-baseline.properties}, the test fails if the throughput drops below, or the
+ * p99 latency rises above, the baseline by more than the tolerance ({@code tolerance} in the baseline, or
+ * {@code -Dloadtest.tolerance}, default 0.3). No baseline is checked in, as the numbers depend on the machine:
+ * copy the results of a run on the target machine to create one. Without a baseline, the results are only
+ * reported.
+ *
+ * The test only runs with {@code -Dloadtest=true}, or via the {@code load-test} profile:
+ * {@code mvn -P load-test test -Dloadtest.producers=1,8 -Dloadtest.itemBytes=256}
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
 public class PublishQueueIntegrationTest {
-    
+    private static final Logger LOG = LoggerFactory.getLogger(PublishQueueIntegrationTest.class);
+    private static final String BASELINE_RESOURCE = "/publish-queue-baseline.properties";
+    private static final Path RESULT_FILE = Path.of("target", "publish-queue-load-test.properties");
+
+    private final List<Integer> producerCounts = intList("loadtest.producers", "1,4");
+    private final List<Integer> itemSizes = intList("loadtest.itemBytes", "64,1024");
+    private final int saturatedItems = Integer.getInteger("loadtest.items", 1_000_000);
+    private final int pacedRate = Integer.getInteger("loadtest.pacedRate", 100_000);
+    private final Duration pacedDuration = Duration.ofSeconds(Integer.getInteger("loadtest.pacedSeconds", 2));
+    private final Duration sinkLatency = Duration.ofNanos(
+            TimeUnit.MICROSECONDS.toNanos(Integer.getInteger("loadtest.sinkLatencyMicros", 200)));
+
+    @Test
+    void throughputAndLatencyWithinBaseline() throws Exception {
+        Properties baseline = loadBaseline();
+        double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance",
+                baseline.getProperty("tolerance", "0.3")));
+        Properties results = new Properties();
+        List<String> regressions = new ArrayList<>();
+
+        // Warm up the JIT before measuring.
+        runSaturated(2, 64, saturatedItems / 4);
+
+        for (int producers : producerCounts) {
+            for (int itemBytes : itemSizes) {
+                String scenario = String.format("p%d.b%d", producers, itemBytes);
+                double throughput = runSaturated(producers, itemBytes, saturatedItems);
+                Histogram latency = runPaced(producers, itemBytes);
+                long p99Micros = TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.0));
+
+                LOG.info("Scenario {}: throughput {} items/s. Latency (us) p50: {}, p99: {}, p99.9: {}, max: {}",
+                        scenario, Math.round(throughput),
+                        TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50.0)),
+                        p99Micros,
+                        TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99.9)),
+                        TimeUnit.NANOSECONDS.toMicros(latency.getMaxValue()));
+                results.setProperty(scenario + ".throughput", String.valueOf(Math.round(throughput)));
+                results.setProperty(scenario + ".p99Micros", String.valueOf(p99Micros));
+
+                String baselineThroughput = baseline.getProperty(scenario + ".throughput");
+                if (null != baselineThroughput
+                        && throughput < Double.parseDouble(baselineThroughput) * (1 - tolerance)) {
+                    regressions.add(String.format("%s throughput %d items/s is below baseline %s",
+                            scenario, Math.round(throughput), baselineThroughput));
+                }
+                String baselineP99 = baseline.getProperty(scenario + ".p99Micros");
+                if (null != baselineP99 && p99Micros > Double.parseDouble(baselineP99) * (1 + tolerance)) {
+                    regressions.add(String.format("%s p99 latency %d us is above baseline %s",
+                            scenario, p99Micros, baselineP99));
+                }
+            }
+        }
+
+        writeResults(results);
+        assertTrue(regressions.isEmpty(), "Load test regressions (tolerance " + tolerance + "): " + regressions);
+    }
+
+    /*
+    Adds the items as fast as possible and returns the throughput in items per second, including the time to
+    drain the queue.
+     */
+    private double runSaturated(int producers, int itemBytes, int items) throws InterruptedException {
+        InProcessSink sink = new InProcessSink(sinkLatency);
+        PublishQueue<LoadItem> queue = newQueue(sink);
+        int itemsPerProducer = items / producers;
+
+        queue.start();
+        long startNanos = System.nanoTime();
+        runProducers(producers, () -> {
+            byte[] payload = new byte[itemBytes];
+            for (int i = 0; i < itemsPerProducer; i++) {
+                queue.put(new LoadItem(System.nanoTime(), payload));
+            }
+        });
+        queue.stop();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertTrue(sink.getItemCount() == (long) itemsPerProducer * producers, "All items should be published");
+        return sink.getItemCount() * 1e9 / elapsedNanos;
+    }
+
+    /*
+    Adds the items at a fixed total rate and returns the enqueue-to-ack latency histogram.
+     */
+    private Histogram runPaced(int producers, int itemBytes) throws InterruptedException {
+        InProcessSink sink = new InProcessSink(sinkLatency);
+        PublishQueue<LoadItem> queue = newQueue(sink);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * producers / pacedRate;
+        long itemsPerProducer = pacedDuration.toNanos() / intervalNanos;
+
+        queue.start();
+        long startNanos = System.nanoTime();
+        runProducers(producers, () -> {
+            byte[] payload = new byte[itemBytes];
+            for (long i = 0; i < itemsPerProducer; i++) {
+                long intendedNanos = startNanos + i * intervalNanos;
+                long waitNanos = intendedNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                queue.put(new LoadItem(intendedNanos, payload));
+            }
+        });
+        queue.stop();
+        return sink.getLatency();
+    }
+
+    private PublishQueue<LoadItem> newQueue(InProcessSink sink) {
+        return PublishQueue.of(sink)
+                .withCapacity(65_536)
+                .withMaxBatchSize(1_000)
+                .withMaxBatchBytes(1024L * 1024, item -> item.payload().length)
+                .withMaxLinger(Duration.ofMillis(5));
+    }
+
+    private static void runProducers(int producers, Runnable producer) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            threads.add(Thread.ofPlatform().name("load-producer-" + i).start(producer));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream stream = PublishQueueIntegrationTest.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            if (null == stream) {
+                LOG.warn("No baseline found at {}. Reporting results only.", BASELINE_RESOURCE);
+            } else {
+                baseline.load(stream);
+            }
+        }
+        return baseline;
+    }
+
+    private static void writeResults(Properties results) throws IOException {
+        Files.createDirectories(RESULT_FILE.getParent());
+        try (OutputStream stream = Files.newOutputStream(RESULT_FILE)) {
+            results.store(stream, "PublishQueue load test results. Copy to src/test/resources/"
+                    + BASELINE_RESOURCE.substring(1) + " to update the baseline.");
+        }
+        LOG.info("Wrote the load test results to {}", RESULT_FILE.toAbsolutePath());
+    }
+
+    private static List<Integer> intList(String property, String defaultValue) {
+        return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+                .map(String::strip)
+                .map(Integer::valueOf)
+                .toList();
+    }
+
+    private record LoadItem(long enqueueNanos, byte[] payload) {}
+
+    /*
+    A stand-in for a downstream system: each batch takes a fixed latency, after which the enqueue-to-ack latency
+    of every item in the batch is recorded.
+     */
+    private static final class InProcessSink implements PublishSink<LoadItem> {
+        private final Recorder recorder = new Recorder(3);
+        private final Histogram latency = new Histogram(3);
+        private final long latencyNanos;
+        private long itemCount = 0L;
+
+        InProcessSink(Duration latency) {
+            this.latencyNanos = latency.toNanos();
+        }
+
+        @Override
+        public void publish(List<LoadItem> batch) {
+            if (latencyNanos > 0) {
+                LockSupport.parkNanos(latencyNanos);
+            }
+            long ackNanos = System.nanoTime();
+            for (LoadItem item : batch) {
+                recorder.recordValue(ackNanos - item.enqueueNanos());
+            }
+            synchronized (this) {
+                itemCount += batch.size();
+            }
+        }
+
+        synchronized long getItemCount() {
+            return itemCount;
+        }
+
+        Histogram getLatency() {
+            latency.add(recorder.getIntervalHistogram());
+            return latency;
+        }
+    }
 }
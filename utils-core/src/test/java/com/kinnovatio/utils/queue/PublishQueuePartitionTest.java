@@ -0,0 +1,155 @@
+package com.kinnovatio.utils.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the key-partitioned lanes of {@link PublishQueue}.
+ */
+public class PublishQueuePartitionTest {
+
+    @Test
+    void itemsWithTheSameKeyArePublishedInOrder() throws Exception {
+        Map<Integer, List<Integer>> published = new ConcurrentHashMap<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        PublishSink<Reading> sink = batch -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(Duration.ofMillis(2).toNanos()));
+            for (Reading reading : batch) {
+                published.computeIfAbsent(reading.sensor(), key -> new ArrayList<>()).add(reading.sequence());
+            }
+            inFlight.decrementAndGet();
+        };
+
+        PublishQueue<Reading> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(25)
+                .withPartitioning(Reading::sensor, 8);
+        queue.start();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(Thread.ofPlatform().start(() -> {
+                for (int sequence = 0; sequence < 2_000; sequence++) {
+                    for (int sensor = producer * 10; sensor < producer * 10 + 10; sensor++) {
+                        queue.put(new Reading(sensor, sequence));
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        queue.stop();
+
+        assertEquals(40, published.size());
+        for (List<Integer> sequences : published.values()) {
+            assertEquals(2_000, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, (int) sequences.get(i));
+            }
+        }
+        assertTrue(maxInFlight.get() > 1, "The lanes should publish concurrently");
+    }
+
+    @Test
+    void slowLaneDoesNotHoldUpOtherLanes() throws Exception {
+        // Sensors 0 and 3 are routed to different lanes of two.
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastLaneDone = new CountDownLatch(100);
+        Map<Integer, List<Integer>> published = new ConcurrentHashMap<>();
+        PublishSink<Reading> sink = batch -> {
+            if (batch.getFirst().sensor() == 0) {
+                release.await();
+            }
+            for (Reading reading : batch) {
+                published.computeIfAbsent(reading.sensor(), key -> new ArrayList<>()).add(reading.sequence());
+                if (reading.sensor() == 3) {
+                    fastLaneDone.countDown();
+                }
+            }
+        };
+        PublishQueue<Reading> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(10)
+                .withPartitioning(Reading::sensor, 2);
+        queue.start();
+        // More batches for the slow lane than its backlog holds, then the items of the other lane.
+        for (int sequence = 0; sequence < 200; sequence++) {
+            queue.put(new Reading(0, sequence));
+        }
+        for (int sequence = 0; sequence < 100; sequence++) {
+            queue.put(new Reading(3, sequence));
+        }
+
+        assertTrue(fastLaneDone.await(10, TimeUnit.SECONDS), "The fast lane should be published");
+        assertFalse(published.containsKey(0));
+        assertTrue(queue.getPartitionStats().laneBacklogs().stream().mapToInt(Integer::intValue).sum() > 4,
+                "The slow lane's batches should wait in its overflow");
+        release.countDown();
+        queue.stop();
+
+        for (int sensor : List.of(0, 3)) {
+            List<Integer> sequences = published.get(sensor);
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i, (int) sequences.get(i));
+            }
+        }
+        assertEquals(200, published.get(0).size());
+    }
+
+    @Test
+    void interruptedLaneStopsAndDiscardsItsBatches() {
+        AtomicInteger calls = new AtomicInteger();
+        PublishSink<Reading> sink = batch -> {
+            if (batch.getFirst().sensor() == 0 && calls.incrementAndGet() == 1) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        PublishQueue<Reading> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(10)
+                .withPartitioning(Reading::sensor, 2);
+        queue.start();
+        for (int sequence = 0; sequence < 500; sequence++) {
+            queue.put(new Reading(0, sequence));
+            queue.put(new Reading(3, sequence));
+        }
+
+        assertTrue(queue.stop());
+        assertEquals(1, calls.get());
+        assertTrue(queue.getStats().getDiscardedItems() > 0);
+        assertEquals(1_000L, queue.getStats().getPublishedItems() + queue.getStats().getDiscardedItems());
+    }
+
+    @Test
+    void partitionStatsReportSkew() {
+        PublishQueue<Reading> queue = PublishQueue.of((List<Reading> batch) -> {})
+                .withPartitioning(Reading::sensor, 4);
+        queue.start();
+        for (int i = 0; i < 1_000; i++) {
+            queue.put(new Reading(i % 10 == 0 ? i : 7, i));
+        }
+        queue.stop();
+
+        PartitionStats stats = queue.getPartitionStats();
+        assertEquals(4, stats.laneItems().size());
+        assertEquals(1_000L, stats.laneItems().stream().mapToLong(Long::longValue).sum());
+        assertTrue(stats.skew() > 2.5, "A single hot key should dominate one lane");
+        assertTrue(stats.laneItems().get(stats.hottestLane()) >= 900L);
+    }
+
+    private record Reading(int sensor, int sequence) {}
+}
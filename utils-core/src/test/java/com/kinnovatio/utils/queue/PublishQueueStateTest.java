@@ -0,0 +1,163 @@
+package com.kinnovatio.utils.queue;
+
+import com.kinnovatio.utils.statestore.MemoryStateStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the state store filtering of {@link PublishQueue}.
+ */
+public class PublishQueueStateTest {
+
+    @Test
+    void putSkipsItemsInsideTheState() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        stateStore.setLow("a", 10L);
+        stateStore.setHigh("a", 20L);
+        List<Reading> published = new CopyOnWriteArrayList<>();
+        PublishQueue<Reading> queue = queue(published::addAll, stateStore);
+
+        for (long watermark : List.of(5L, 10L, 15L, 20L, 25L)) {
+            assertTrue(queue.put(new Reading("a", watermark)));
+        }
+        queue.put(new Reading("b", 15L));
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(new Reading("a", 5L), new Reading("a", 25L), new Reading("b", 15L)), published);
+        assertEquals(3L, queue.getStats().getFilteredItems());
+        assertEquals(3L, queue.getStats().getEnqueuedItems());
+    }
+
+    @Test
+    void publishedBatchesExpandTheState() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        PublishQueue<Reading> queue = queue(batch -> {}, stateStore);
+        for (long watermark = 1L; watermark <= 5L; watermark++) {
+            queue.put(new Reading("a", watermark));
+        }
+        queue.start();
+        queue.stop();
+
+        assertEquals(OptionalLong.of(1L), stateStore.getLow("a"));
+        assertEquals(OptionalLong.of(5L), stateStore.getHigh("a"));
+
+        // The next run skips the published items.
+        List<Reading> published = new CopyOnWriteArrayList<>();
+        PublishQueue<Reading> next = queue(published::addAll, stateStore);
+        next.put(new Reading("a", 3L));
+        next.put(new Reading("a", 6L));
+        next.start();
+        next.stop();
+        assertEquals(List.of(new Reading("a", 6L)), published);
+        assertEquals(OptionalLong.of(6L), stateStore.getHigh("a"));
+    }
+
+    @Test
+    void discardedBatchHoldsBackTheStateOfItsKeys() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        // The first batch (a1, a2, a3) fails, the later batches are published.
+        PublishSink<Reading> sink = batch -> {
+            if (batch.getFirst().equals(new Reading("a", 1L))) {
+                throw new IllegalStateException("Unavailable");
+            }
+        };
+        PublishQueue<Reading> queue = queue(sink, stateStore);
+        for (long watermark = 1L; watermark <= 6L; watermark++) {
+            queue.put(new Reading("a", watermark));
+        }
+        for (long watermark = 1L; watermark <= 3L; watermark++) {
+            queue.put(new Reading("b", watermark));
+        }
+        queue.start();
+        queue.stop();
+
+        assertEquals(3L, queue.getStats().getDiscardedItems());
+        // Expanding "a" over 4..6 would skip the discarded items 1..3 in the next run.
+        assertFalse(stateStore.getHigh("a").isPresent());
+        assertFalse(stateStore.getLow("a").isPresent());
+        assertEquals(OptionalLong.of(3L), stateStore.getHigh("b"));
+    }
+
+    @Test
+    void stateOnlyAdvancesOverTheContiguousPrefix() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        StateFilter<Reading> filter = new StateFilter<>(stateStore, Reading::key, Reading::watermark);
+        StateFilter.Pending first = filter.register(List.of(new Reading("a", 1L), new Reading("a", 2L)));
+        StateFilter.Pending second = filter.register(List.of(new Reading("a", 3L), new Reading("b", 1L)));
+        StateFilter.Pending third = filter.register(List.of(new Reading("a", 4L)));
+
+        // "b" has no earlier batch, "a" waits for the first batch.
+        filter.complete(third);
+        filter.complete(second);
+        assertFalse(stateStore.getHigh("a").isPresent());
+        assertEquals(OptionalLong.of(1L), stateStore.getHigh("b"));
+
+        filter.complete(first);
+        assertEquals(OptionalLong.of(1L), stateStore.getLow("a"));
+        assertEquals(OptionalLong.of(4L), stateStore.getHigh("a"));
+    }
+
+    @Test
+    void discardedBatchBlocksItsKeyWithoutTrackingLaterBatches() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        StateFilter<Reading> filter = new StateFilter<>(stateStore, Reading::key, Reading::watermark);
+        StateFilter.Pending first = filter.register(List.of(new Reading("a", 1L)));
+        StateFilter.Pending discarded = filter.register(List.of(new Reading("a", 2L), new Reading("b", 1L)));
+        StateFilter.Pending behind = filter.register(List.of(new Reading("a", 3L)));
+        filter.discard(discarded);
+        filter.complete(behind);
+        assertEquals(1, filter.size());
+
+        // The batch registered before the discarded batch still advances the state.
+        filter.complete(first);
+        assertEquals(OptionalLong.of(1L), stateStore.getHigh("a"));
+        assertEquals(0, filter.size());
+
+        for (long watermark = 4L; watermark < 10_000L; watermark++) {
+            filter.complete(filter.register(List.of(new Reading("a", watermark), new Reading("c", watermark))));
+            assertEquals(0, filter.size());
+        }
+        assertEquals(OptionalLong.of(1L), stateStore.getHigh("a"));
+        assertFalse(stateStore.getHigh("b").isPresent());
+        assertEquals(OptionalLong.of(9_999L), stateStore.getHigh("c"));
+    }
+
+    @Test
+    void discardedBatchDoesNotHoldLaterBatchesInTheQueue() {
+        MemoryStateStore stateStore = MemoryStateStore.create();
+        PublishSink<Reading> sink = batch -> {
+            if (batch.getFirst().equals(new Reading("a", 1L))) {
+                throw new IllegalStateException("Unavailable");
+            }
+        };
+        PublishQueue<Reading> queue = queue(sink, stateStore);
+        queue.start();
+        for (long watermark = 1L; watermark <= 3_000L; watermark++) {
+            queue.put(new Reading("a", watermark));
+        }
+        queue.stop();
+
+        assertEquals(3L, queue.getStats().getDiscardedItems());
+        assertEquals(2_997L, queue.getStats().getPublishedItems());
+        assertEquals(0, queue.getStateFilter().orElseThrow().size());
+        assertFalse(stateStore.getHigh("a").isPresent());
+    }
+
+    private static PublishQueue<Reading> queue(PublishSink<Reading> sink, MemoryStateStore stateStore) {
+        return PublishQueue.of(sink)
+                .withMaxBatchSize(3)
+                .withMaxLinger(Duration.ofMinutes(10))
+                .withStateStore(stateStore, Reading::key, Reading::watermark);
+    }
+
+    private record Reading(String key, long watermark) {}
+}
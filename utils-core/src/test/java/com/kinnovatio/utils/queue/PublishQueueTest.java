@@ -0,0 +1,306 @@
+package com.kinnovatio.utils.queue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the batching, backpressure and shutdown of {@link PublishQueue}.
+ */
+public class PublishQueueTest {
+
+    @Test
+    void multipleProducersPublishEachItemOnce() throws Exception {
+        List<Integer> published = new CopyOnWriteArrayList<>();
+        PublishQueue<Integer> queue = PublishQueue.<Integer>of(published::addAll)
+                .withCapacity(256)
+                .withMaxBatchSize(100);
+        queue.start();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 25_000; i++) {
+                    queue.put(producer * 25_000 + i);
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        queue.stop();
+
+        assertEquals(100_000, published.size());
+        assertEquals(100_000, new HashSet<>(published).size());
+        assertEquals(100_000L, queue.getStats().getPublishedItems());
+        assertEquals(100_000L, queue.getStats().getEnqueuedItems());
+    }
+
+    @Test
+    void flushesBySize() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(10)
+                .withMaxLinger(Duration.ofMinutes(10));
+        for (int i = 0; i < 25; i++) {
+            queue.put(i);
+        }
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(10, 10, 5), sink.batchSizes());
+        assertEquals(2L, queue.getStats().getFlushes(FlushReason.SIZE));
+        assertEquals(1L, queue.getStats().getFlushes(FlushReason.SHUTDOWN));
+        assertEquals(0L, queue.getStats().getFlushes(FlushReason.TIME));
+    }
+
+    @Test
+    void flushesByBytes() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(1_000)
+                .withMaxBatchBytes(100, item -> 40L)
+                .withMaxLinger(Duration.ofMinutes(10));
+        for (int i = 0; i < 7; i++) {
+            queue.put(i);
+        }
+        queue.start();
+        queue.stop();
+
+        // A batch is flushed as soon as it reaches the max bytes: 3 x 40 >= 100.
+        assertEquals(List.of(3, 3, 1), sink.batchSizes());
+        assertEquals(2L, queue.getStats().getFlushes(FlushReason.BYTES));
+        assertEquals(1L, queue.getStats().getFlushes(FlushReason.SHUTDOWN));
+    }
+
+    @Test
+    void flushesByLinger() throws Exception {
+        CountDownLatch published = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void publish(List<Integer> batch) {
+                super.publish(batch);
+                published.countDown();
+            }
+        };
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(1_000)
+                .withMaxLinger(Duration.ofMillis(20));
+        queue.start();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            queue.put(i);
+        }
+
+        assertTrue(published.await(10, TimeUnit.SECONDS), "The batch should be flushed by the linger time");
+        assertTrue(System.nanoTime() - startNanos >= Duration.ofMillis(20).toNanos(),
+                "The batch should not be flushed before the linger time");
+        assertEquals(List.of(3), sink.batchSizes());
+        assertEquals(1L, queue.getStats().getFlushes(FlushReason.TIME));
+        queue.stop();
+        assertEquals(0L, queue.getStats().getFlushes(FlushReason.SHUTDOWN));
+    }
+
+    @Test
+    void dropPolicyRejectsItemsWhenFull() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withCapacity(4)
+                .withBackpressurePolicy(BackpressurePolicy.DROP);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.put(i));
+        }
+        assertFalse(queue.put(4));
+        assertFalse(queue.put(5));
+        assertEquals(2L, queue.getStats().getDroppedItems());
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(0, 1, 2, 3), sink.items());
+    }
+
+    @Test
+    void failPolicyThrowsWhenFull() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withCapacity(4)
+                .withBackpressurePolicy(BackpressurePolicy.FAIL);
+        for (int i = 0; i < 4; i++) {
+            queue.put(i);
+        }
+        assertThrows(IllegalStateException.class, () -> queue.put(4));
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(0, 1, 2, 3), sink.items());
+    }
+
+    @Test
+    void blockPolicyWaitsForRoom() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withCapacity(4)
+                .withBackpressurePolicy(BackpressurePolicy.BLOCK);
+        Thread producer = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 100; i++) {
+                queue.put(i);
+            }
+        });
+        // The queue is not started, so nothing frees up room for the fifth item.
+        producer.join(200);
+        assertTrue(producer.isAlive(), "The producer should block while the queue is full");
+        assertEquals(4, queue.size());
+
+        queue.start();
+        producer.join();
+        queue.stop();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, sink.items());
+        assertEquals(0L, queue.getStats().getDroppedItems());
+    }
+
+    @Test
+    void stopPublishesTheRemainingItems() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(100)
+                .withMaxLinger(Duration.ofMinutes(10));
+        queue.start();
+        for (int i = 0; i < 10_050; i++) {
+            queue.put(i);
+        }
+        assertTrue(queue.stop());
+
+        assertEquals(10_050, sink.items().size());
+        assertEquals(10_050L, queue.getStats().getPublishedItems());
+        assertEquals(0, queue.size());
+        assertThrows(IllegalStateException.class, () -> queue.put(0));
+        assertFalse(queue.start());
+    }
+
+    @Test
+    void durableQueueReplaysDiscardedBatchesAfterRestart(@TempDir Path directory) {
+        // The first batch fails and is discarded, the second is published.
+        RecordingSink failing = new RecordingSink() {
+            private boolean failed = false;
+
+            @Override
+            public void publish(List<Integer> batch) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("Unavailable");
+                }
+                super.publish(batch);
+            }
+        };
+        PublishQueue<Integer> queue = durableQueue(failing, directory);
+        for (int i = 0; i < 6; i++) {
+            queue.put(i);
+        }
+        queue.start();
+        queue.stop();
+        assertEquals(List.of(3, 4, 5), failing.items());
+        assertEquals(3L, queue.getStats().getDiscardedItems());
+
+        // The discarded batch holds back the consumer offset, so both batches are replayed.
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> restarted = durableQueue(sink, directory);
+        restarted.start();
+        restarted.stop();
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), sink.items());
+
+        RecordingSink empty = new RecordingSink();
+        PublishQueue<Integer> again = durableQueue(empty, directory);
+        again.start();
+        again.stop();
+        assertTrue(empty.items().isEmpty());
+    }
+
+    @Test
+    void failingMetricsHookDoesNotRepublishTheBatch() {
+        RecordingSink sink = new RecordingSink();
+        PublishQueue<Integer> queue = PublishQueue.of(sink)
+                .withMaxBatchSize(3)
+                .withMaxLinger(Duration.ofMinutes(10))
+                .withMetrics(new PublishQueueMetrics() {
+                    @Override
+                    public void bind(PublishQueueStats stats) {
+                    }
+
+                    @Override
+                    public void recordBatch(FlushReason reason, int batchSize, long sinkLatencyNanos) {
+                        throw new IllegalStateException("Metrics backend unavailable");
+                    }
+                });
+        for (int i = 0; i < 6; i++) {
+            queue.put(i);
+        }
+        queue.start();
+        queue.stop();
+
+        assertEquals(List.of(3, 3), sink.batchSizes());
+        assertEquals(6L, queue.getStats().getPublishedItems());
+        assertEquals(0L, queue.getStats().getRetries());
+        assertEquals(0L, queue.getStats().getDiscardedItems());
+    }
+
+    @Test
+    void stopWithoutStartHasNoEffect() {
+        PublishQueue<Integer> queue = PublishQueue.of(new RecordingSink());
+        assertFalse(queue.stop());
+    }
+
+    private static PublishQueue<Integer> durableQueue(PublishSink<Integer> sink, Path directory) {
+        return PublishQueue.of(sink)
+                .withMaxBatchSize(3)
+                .withMaxLinger(Duration.ofMinutes(10))
+                .withDurableStorage(directory, new ItemCodec<>() {
+                    @Override
+                    public byte[] encode(Integer item) {
+                        return new byte[] {item.byteValue()};
+                    }
+
+                    @Override
+                    public Integer decode(ByteBuffer buffer) {
+                        return (int) buffer.get();
+                    }
+                });
+    }
+
+    /*
+    Records the published batches. The batches are published from one thread at a time in these tests.
+     */
+    private static class RecordingSink implements PublishSink<Integer> {
+        private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(List<Integer> batch) {
+            batches.add(List.copyOf(batch));
+        }
+
+        List<Integer> batchSizes() {
+            return batches.stream().map(List::size).toList();
+        }
+
+        List<Integer> items() {
+            return batches.stream().flatMap(List::stream).toList();
+        }
+    }
+}
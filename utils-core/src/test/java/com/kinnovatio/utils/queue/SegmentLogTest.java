@@ -0,0 +1,186 @@
+package com.kinnovatio.utils.queue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the {@link SegmentLog}: append and replay, restarts, segment rolling and recovery from torn writes.
+ */
+public class SegmentLogTest {
+    private static final int SEGMENT_BYTES = 256;
+
+    @Test
+    void replaysUnacknowledgedRecordsAfterRestart(@TempDir Path directory) {
+        List<Long> endOffsets = new ArrayList<>();
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertTrue(replay(log).isEmpty());
+            for (String record : List.of("a", "", "bb", "ccc")) {
+                endOffsets.add(log.append(bytes(record)));
+            }
+            assertEquals((long) endOffsets.get(3), log.getEndOffset());
+            // Records appended after the log was opened are not replayed.
+            assertTrue(replay(log).isEmpty());
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            // An empty payload is a record like any other.
+            assertEquals(List.of("a", "", "bb", "ccc"), replay(log));
+            assertEquals((long) endOffsets.get(3), log.getReplayEndOffset());
+            log.acknowledge(endOffsets.get(1));
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals((long) endOffsets.get(1), log.getAcknowledgedOffset());
+            assertEquals(List.of("bb", "ccc"), replay(log));
+            log.append(bytes("dddd"));
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(List.of("bb", "ccc", "dddd"), replay(log));
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesAcknowledgedSegments(@TempDir Path directory) throws Exception {
+        List<Long> endOffsets = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 40; i++) {
+                records.add("record-" + i);
+                endOffsets.add(log.append(bytes(records.get(i))));
+            }
+            // A record larger than the segment size gets a segment of its own.
+            records.add("x".repeat(SEGMENT_BYTES * 2));
+            endOffsets.add(log.append(bytes(records.get(40))));
+            records.add("after");
+            endOffsets.add(log.append(bytes(records.get(41))));
+        }
+        int segmentCount = segmentFiles(directory).size();
+        assertTrue(segmentCount > 3, "Segments: " + segmentCount);
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(records, replay(log));
+            log.acknowledge(endOffsets.get(30));
+            assertTrue(segmentFiles(directory).size() < segmentCount);
+        }
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(records.subList(31, records.size()), replay(log));
+            log.acknowledge(endOffsets.get(41));
+            assertEquals(1, segmentFiles(directory).size());
+        }
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertTrue(replay(log).isEmpty());
+            assertEquals((long) endOffsets.get(41), log.getEndOffset());
+        }
+    }
+
+    @Test
+    void recoversFromATornTail(@TempDir Path directory) throws Exception {
+        long end;
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            log.append(bytes("first"));
+            end = log.append(bytes("second"));
+        }
+        // A record whose payload was not fully written back before a crash: the header is in place, but the
+        // payload does not match the checksum.
+        Path segment = segmentFiles(directory).getFirst();
+        write(segment, (int) end, 11 + 1, 0x1234_5678, bytes("third\0\0\0\0\0\0"));
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(List.of("first", "second"), replay(log));
+            assertEquals(end, log.getEndOffset());
+            log.append(bytes("new"));
+        }
+        // The tail was zeroed, so nothing of the torn record is left behind the new record.
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(List.of("first", "second", "new"), replay(log));
+        }
+    }
+
+    @Test
+    void rejectsAHeaderOverrunningTheSegment(@TempDir Path directory) throws Exception {
+        long end;
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            end = log.append(bytes("first"));
+        }
+        write(segmentFiles(directory).getFirst(), (int) end, SEGMENT_BYTES * 4, 0, new byte[0]);
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(List.of("first"), replay(log));
+            assertEquals(end, log.getEndOffset());
+        }
+    }
+
+    @Test
+    void corruptRecordInAnEarlierSegmentEndsThatSegment(@TempDir Path directory) throws Exception {
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(bytes("record-" + i));
+            }
+        }
+        // Flip a payload byte of the second record of the first segment.
+        Path first = segmentFiles(directory).getFirst();
+        byte[] content = Files.readAllBytes(first);
+        content[8 + "record-0".length() + 8] ^= 0x01;
+        Files.write(first, content);
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            List<String> replayed = replay(log);
+            assertEquals("record-0", replayed.getFirst());
+            assertTrue(replayed.size() < 20 && replayed.size() > 1, replayed.toString());
+            assertEquals("record-19", replayed.getLast());
+        }
+    }
+
+    @Test
+    void directoryIsLockedWhileOpen(@TempDir Path directory) {
+        SegmentLog log = SegmentLog.open(directory, SEGMENT_BYTES);
+        assertThrows(IllegalStateException.class, () -> SegmentLog.open(directory, SEGMENT_BYTES));
+        log.close();
+        log.close();
+        try (SegmentLog reopened = SegmentLog.open(directory, SEGMENT_BYTES)) {
+            assertEquals(0L, reopened.getEndOffset());
+        }
+    }
+
+    private static List<String> replay(SegmentLog log) {
+        List<String> records = new ArrayList<>();
+        log.replay((payload, endOffset) -> records.add(StandardCharsets.UTF_8.decode(payload).toString()));
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /*
+    Writes a raw record (header, checksum and payload) at a position of a segment file.
+     */
+    private static void write(Path segment, int position, int header, int checksum, byte[] payload)
+            throws Exception {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer record = ByteBuffer.allocate(8 + payload.length).putInt(header).putInt(checksum).put(payload);
+            channel.write(record.flip(), position);
+        }
+    }
+}